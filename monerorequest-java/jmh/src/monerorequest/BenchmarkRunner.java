@@ -0,0 +1,43 @@
+package monerorequest;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Runs the selected benchmarks (all by default) with -prof gc, once on one thread and once on every core,
+ * unless the arguments pick a thread count. Takes the usual JMH command line options.
+ */
+public final class BenchmarkRunner {
+
+
+    private BenchmarkRunner() {
+    }
+
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.getThreads().hasValue()) {
+            run(commandLine, commandLine.getThreads().get());
+            return;
+        }
+        run(commandLine, 1);
+        run(commandLine, Runtime.getRuntime().availableProcessors());
+    }
+
+
+    private static void run(CommandLineOptions commandLine, int threads) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .threads(threads)
+                .build();
+        new Runner(options).run();
+    }
+
+
+}
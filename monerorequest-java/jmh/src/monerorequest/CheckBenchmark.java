@@ -0,0 +1,121 @@
+package monerorequest;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Every Check method, on the fields of a valid request (the common case when creating requests).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckBenchmark {
+
+
+    @Benchmark
+    public boolean name(Payloads payloads) {
+        return Check.name(payloads.request.customLabel());
+    }
+
+
+    @Benchmark
+    public boolean currency(Payloads payloads) {
+        return Check.currency(payloads.request.currency());
+    }
+
+
+    @Benchmark
+    public Object currencyReason(Payloads payloads) {
+        return Check.currencyReason(payloads.request.currency());
+    }
+
+
+    @Benchmark
+    public boolean wallet(Payloads payloads) {
+        return Check.wallet(payloads.request.sellersWallet(), true, true, false);
+    }
+
+
+    @Benchmark
+    public Object walletReason(Payloads payloads) {
+        return Check.walletReason(payloads.request.sellersWallet(), true, true, false);
+    }
+
+
+    @Benchmark
+    public boolean paymentID(Payloads payloads) {
+        return Check.paymentID(payloads.request.paymentIdHex());
+    }
+
+
+    @Benchmark
+    public Object paymentIDReason(Payloads payloads) {
+        return Check.paymentIDReason(payloads.request.paymentIdHex());
+    }
+
+
+    @Benchmark
+    public boolean startDate(Payloads payloads) {
+        return Check.startDate(payloads.request.startDateString());
+    }
+
+
+    @Benchmark
+    public Object startDateReason(Payloads payloads) {
+        return Check.startDateReason(payloads.request.startDateString());
+    }
+
+
+    @Benchmark
+    public boolean amount(Payloads payloads) {
+        return Check.amount(payloads.request.amount());
+    }
+
+
+    @Benchmark
+    public Object amountReason(Payloads payloads) {
+        return Check.amountReason(payloads.request.amount());
+    }
+
+
+    @Benchmark
+    public boolean daysPerBillingCycle(Payloads payloads) {
+        return Check.daysPerBillingCycle(payloads.request.daysPerBillingCycle());
+    }
+
+
+    @Benchmark
+    public boolean numberOfPayments(Payloads payloads) {
+        return Check.numberOfPayments(payloads.request.numberOfPayments());
+    }
+
+
+    @Benchmark
+    public Object nonNegativeIntegerReason(Payloads payloads) {
+        return Check.nonNegativeIntegerReason(payloads.request.numberOfPayments());
+    }
+
+
+    @Benchmark
+    public boolean changeIndicatorUrl(Payloads payloads) {
+        return Check.changeIndicatorUrl(payloads.request.changeIndicatorUrl());
+    }
+
+
+    @Benchmark
+    public Object changeIndicatorUrlReason(Payloads payloads) {
+        return Check.changeIndicatorUrlReason(payloads.request.changeIndicatorUrl());
+    }
+
+
+}
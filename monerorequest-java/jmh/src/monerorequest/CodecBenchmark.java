@@ -0,0 +1,65 @@
+package monerorequest;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Creating and reading whole monero-request strings, and the v1 Encode/Decode steps underneath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    // Results are returned as Object: JMH's generated code lives in another package and can't name our types
+
+
+    @Benchmark
+    public Object create(Payloads payloads) throws IOException {
+        PaymentRequest r = payloads.request;
+        return MoneroPaymentRequest.create(r.customLabel(), r.sellersWallet(), r.currency(), r.amount(), r.paymentIdHex(),
+                r.startDateString(), r.daysPerBillingCycle(), r.numberOfPayments(), r.changeIndicatorUrl());
+    }
+
+
+    @Benchmark
+    public Object createRequest(Payloads payloads) throws IOException {
+        return MoneroPaymentRequest.create(payloads.request);
+    }
+
+
+    @Benchmark
+    public Object read(Payloads payloads) {
+        return MoneroPaymentRequest.read(payloads.encoded);
+    }
+
+
+    @Benchmark
+    public Object readRequest(Payloads payloads) {
+        return MoneroPaymentRequest.readRequest(payloads.encoded);
+    }
+
+
+    @Benchmark
+    public Object encodeV1(Payloads payloads) throws IOException {
+        return Encode.v1MoneroPaymentRequest(payloads.map);
+    }
+
+
+    @Benchmark
+    public Object decodeV1(Payloads payloads) {
+        return Decode.v1MoneroPaymentRequest(payloads.v1Data);
+    }
+
+
+}
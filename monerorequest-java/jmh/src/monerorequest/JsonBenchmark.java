@@ -0,0 +1,49 @@
+package monerorequest;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * JsonUtils parsing and serialization of the payment request payload.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+
+    @Benchmark
+    public Object parseJson(Payloads payloads) {
+        return JsonUtils.parseJson(payloads.json);
+    }
+
+
+    @Benchmark
+    public Object parseJsonBytes(Payloads payloads) {
+        return JsonUtils.parseJson(payloads.jsonBytes, 0, payloads.jsonBytes.length);
+    }
+
+
+    @Benchmark
+    public Object mapToJson(Payloads payloads) {
+        return JsonUtils.mapToJson(payloads.map);
+    }
+
+
+    @Benchmark
+    public Object paymentRequestToJson(Payloads payloads) {
+        return JsonUtils.paymentRequestToJson(payloads.request);
+    }
+
+
+}
@@ -0,0 +1,66 @@
+package monerorequest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+
+/**
+ * Realistic payment requests shared by the benchmarks, one per label kind, in every form the benchmarked calls take.
+ */
+@State(Scope.Benchmark)
+public class Payloads {
+    static final String WALLET = "4At3X5rvVypTofgmueN9s9QtrzdRe5BueFrskAZi17BoYbhzysozzoMFB6zWnTKdGC6AxEAbEE5czFR3hbEEJbsm4hCeX2S";
+    static final String INTEGRATED_WALLET = "4LL9oSLmtpccfufTMvppY6JwXNouMBzSkbLYfpAV5Usx3skxNgYeYTRj5UzqtReoS44qo9mtmXCqY45DJ852K5Jv2bYXZKKQePHES9khPK";
+
+    // Labels with commas, colons, quotes and non-ASCII text are the ones the old split-based parser got wrong
+    @Param({"plain", "commas", "unicode", "colons"})
+    public String label;
+
+    PaymentRequest request;
+    Map<String, Object> map;
+    String encoded;
+    String v1Data;
+    String json;
+    byte[] jsonBytes;
+
+
+    @Setup
+    public void setUp() throws IOException {
+        boolean standard = !label.equals("unicode");
+        request = PaymentRequest.builder()
+                .customLabel(customLabel(label))
+                .sellersWallet(standard ? WALLET : INTEGRATED_WALLET)
+                .currency(standard ? "USD" : "XMR")
+                .amount(standard ? "1,000.50" : "0.25")
+                .paymentId(0x1234_5678_9abc_def0L)
+                .startDate("2024-02-20T09:59:58.030Z")
+                .daysPerBillingCycle(30)
+                .numberOfPayments(12)
+                .changeIndicatorUrl(standard ? "https://merchant.example.com/subscriptions/changes" : "")
+                .build();
+        map = request.toMap();
+        encoded = MoneroPaymentRequest.create(request);
+        v1Data = encoded.substring("monero-request:1:".length());
+        json = JsonUtils.mapToJson(map);
+        jsonBytes = json.getBytes(StandardCharsets.UTF_8);
+    }
+
+
+    private static String customLabel(String label) {
+        switch (label) {
+            case "plain": return "Unlabeled Monero Payment Request";
+            case "commas": return "Gym membership, monthly (includes sauna, towels)";
+            case "unicode": return "Caf\u00e9 \u00abCr\u00e8me\u00bb \u2014 \u6708\u984d\u30d7\u30e9\u30f3 \ud83d\ude80, \"premium\" tier";
+            case "colons": return "Hosting: 2 vCPU, 4GB RAM, 80GB SSD";
+            default: throw new IllegalArgumentException("Unknown label: " + label);
+        }
+    }
+
+
+}
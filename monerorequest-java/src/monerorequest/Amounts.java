@@ -0,0 +1,265 @@
+package monerorequest;
+
+import java.math.BigInteger;
+
+
+/**
+ * Exact fixed-point amounts: parses the amount field into a long in the currency's smallest unit
+ * (piconero for XMR, cents for USD) without allocating, and converts USD amounts to XMR against a rate snapshot.
+ */
+final class Amounts {
+    // Returned for amounts that are malformed, ambiguous, too precise, too large, or in an unsupported currency
+    public static final long INVALID = -1;
+
+    public static final int XMR_SCALE = 12;
+    public static final int USD_SCALE = 2;
+    // Decimal places kept in exchange rates
+    public static final int RATE_SCALE = 8;
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+
+    private Amounts() {
+    }
+
+
+    // Decimal places of the currency's smallest unit, or -1 if the currency isn't supported
+    public static int scale(String currency) {
+        if ("XMR".equals(currency)) {
+            return XMR_SCALE;
+        }
+        if ("USD".equals(currency)) {
+            return USD_SCALE;
+        }
+        return -1;
+    }
+
+
+    // The request's amount in its currency's smallest unit (e.g. "1,000.50" USD is 100050), or INVALID
+    public static long parse(PaymentRequest request) {
+        return parse(request.amount(), request.currency());
+    }
+
+
+    public static long parse(CharSequence amount, String currency) {
+        int scale = scale(currency);
+        return scale < 0 ? INVALID : parse(amount, scale);
+    }
+
+
+    // Parses digits with an optional '.' and at most `scale` decimals; commas are only accepted as thousands
+    // separators (groups of exactly three digits before the '.'), so "1,000.5" parses but "1,5" and "1.000,5" don't.
+    // Extra precision is rejected rather than rounded.
+    public static long parse(CharSequence amount, int scale) {
+        if (scale < 0 || scale >= POWERS_OF_TEN.length) {
+            throw new IllegalArgumentException("scale must be between 0 and " + (POWERS_OF_TEN.length - 1));
+        }
+        int length = amount.length();
+        if (length == 0 || !isDigit(amount.charAt(0))) {
+            return INVALID;
+        }
+
+        long whole = 0;
+        int i = 0;
+        // Digits since the last comma, or -1 before the first comma
+        int groupDigits = -1;
+        int leadingDigits = 0;
+        for (; i < length; i++) {
+            char c = amount.charAt(i);
+            if (c == ',') {
+                if (groupDigits < 0 ? leadingDigits > 3 : groupDigits != 3) {
+                    return INVALID;
+                }
+                groupDigits = 0;
+                continue;
+            }
+            if (!isDigit(c)) {
+                break;
+            }
+            if (whole > (Long.MAX_VALUE - 9) / 10) {
+                return INVALID;
+            }
+            whole = whole * 10 + (c - '0');
+            if (groupDigits < 0) {
+                leadingDigits++;
+            } else {
+                groupDigits++;
+            }
+        }
+        if (groupDigits >= 0 && groupDigits != 3) {
+            return INVALID;
+        }
+
+        long fraction = 0;
+        int decimals = 0;
+        if (i < length) {
+            if (amount.charAt(i) != '.' || i == length - 1) {
+                return INVALID;
+            }
+            for (i++; i < length; i++) {
+                char c = amount.charAt(i);
+                if (!isDigit(c) || ++decimals > scale) {
+                    return INVALID;
+                }
+                fraction = fraction * 10 + (c - '0');
+            }
+        }
+
+        long unit = POWERS_OF_TEN[scale];
+        fraction *= POWERS_OF_TEN[scale - decimals];
+        if (whole > (Long.MAX_VALUE - fraction) / unit) {
+            return INVALID;
+        }
+        return whole * unit + fraction;
+    }
+
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+
+    /**
+     * An immutable USD/XMR exchange rate, held to RATE_SCALE decimal places.
+     * The per-cent conversion factor is split into a quotient and a remainder up front, so converting is exact.
+     */
+    static final class Rate {
+        // 10^(XMR_SCALE - USD_SCALE + RATE_SCALE): piconero per cent times the scaled price
+        private static final long PICONERO_PER_CENT_NUMERATOR = POWERS_OF_TEN[XMR_SCALE - USD_SCALE + RATE_SCALE];
+
+        private final long scaledUsdPerXmr;
+        private final long piconeroPerCent;
+        private final long remainder;
+        private final long asOfEpochMillis;
+
+
+        // usdPerXmr is the price of one XMR in USD, e.g. "163.42"
+        Rate(String usdPerXmr, long asOfEpochMillis) {
+            long scaled = parse(usdPerXmr, RATE_SCALE);
+            if (scaled == INVALID || scaled == 0) {
+                throw new IllegalArgumentException("usdPerXmr must be a positive decimal with at most " + RATE_SCALE + " decimals");
+            }
+            this.scaledUsdPerXmr = scaled;
+            this.piconeroPerCent = PICONERO_PER_CENT_NUMERATOR / scaled;
+            this.remainder = PICONERO_PER_CENT_NUMERATOR % scaled;
+            this.asOfEpochMillis = asOfEpochMillis;
+        }
+
+
+        // USD per XMR in units of 10^-RATE_SCALE
+        public long scaledUsdPerXmr() {
+            return scaledUsdPerXmr;
+        }
+
+
+        public long asOfEpochMillis() {
+            return asOfEpochMillis;
+        }
+
+
+        // Cents to piconero, rounded up so a converted invoice never asks for less than its USD price; INVALID on overflow
+        public long toPiconero(long cents) {
+            if (cents < 0) {
+                return INVALID;
+            }
+            long high = Math.multiplyHigh(cents, piconeroPerCent);
+            long whole = cents * piconeroPerCent;
+            if (high != 0 || whole < 0) {
+                return INVALID;
+            }
+            long part;
+            long product = cents * remainder;
+            if (Math.multiplyHigh(cents, remainder) == 0 && product >= 0) {
+                part = product / scaledUsdPerXmr + (product % scaledUsdPerXmr == 0 ? 0 : 1);
+            } else {
+                // Only for very large amounts at very high prices
+                BigInteger[] division = BigInteger.valueOf(cents).multiply(BigInteger.valueOf(remainder))
+                        .divideAndRemainder(BigInteger.valueOf(scaledUsdPerXmr));
+                part = division[0].longValue() + (division[1].signum() == 0 ? 0 : 1);
+            }
+            return whole > Long.MAX_VALUE - part ? INVALID : whole + part;
+        }
+
+
+        @Override
+        public String toString() {
+            long unit = POWERS_OF_TEN[RATE_SCALE];
+            return String.format("%d.%0" + RATE_SCALE + "d USD/XMR", scaledUsdPerXmr / unit, scaledUsdPerXmr % unit);
+        }
+
+
+    }
+
+
+    /**
+     * Converts requests to piconero against the current rate, which can be swapped at any time;
+     * a batch is always converted against a single snapshot.
+     */
+    static final class Converter {
+        private volatile Rate rate;
+
+
+        // A null rate leaves USD requests unconverted (INVALID) until one is set
+        Converter(Rate rate) {
+            this.rate = rate;
+        }
+
+
+        public Rate rate() {
+            return rate;
+        }
+
+
+        public void setRate(Rate rate) {
+            this.rate = rate;
+        }
+
+
+        // The request's amount in piconero, or INVALID
+        public long toPiconero(PaymentRequest request) {
+            return toPiconero(request, rate);
+        }
+
+
+        // Fills piconero[offset + i] for each request, returning how many converted (the rest are INVALID)
+        public int toPiconero(PaymentRequest[] requests, long[] piconero, int offset) {
+            if (piconero.length - offset < requests.length) {
+                throw new IllegalArgumentException("piconero has room for fewer than " + requests.length + " amounts");
+            }
+            Rate snapshot = rate;
+            int converted = 0;
+            for (int i = 0; i < requests.length; i++) {
+                long amount = toPiconero(requests[i], snapshot);
+                piconero[offset + i] = amount;
+                if (amount != INVALID) {
+                    converted++;
+                }
+            }
+            return converted;
+        }
+
+
+        private static long toPiconero(PaymentRequest request, Rate rate) {
+            String currency = request.currency();
+            if ("XMR".equals(currency)) {
+                return parse(request.amount(), XMR_SCALE);
+            }
+            if (!"USD".equals(currency) || rate == null) {
+                return INVALID;
+            }
+            long cents = parse(request.amount(), USD_SCALE);
+            return cents == INVALID ? INVALID : rate.toPiconero(cents);
+        }
+
+
+    }
+
+
+}
@@ -0,0 +1,142 @@
+package monerorequest;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+
+/**
+ * Reads Base64 text in place from a CharSequence or an ASCII ByteBuffer and decodes it incrementally, without copying the text.
+ */
+final class Base64Source {
+    private static final int[] DECODE_TABLE = new int[128];
+
+    static {
+        Arrays.fill(DECODE_TABLE, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODE_TABLE[alphabet.charAt(i)] = i;
+        }
+    }
+
+    private CharSequence chars;
+    private ByteBuffer bytes;
+    private int pos;
+    private int end;
+
+
+    public Base64Source reset(CharSequence chars, int start, int end) {
+        this.chars = chars;
+        this.bytes = null;
+        this.pos = start;
+        this.end = end;
+        return this;
+    }
+
+
+    // Reads the buffer by absolute index, so its position and limit are left untouched
+    public Base64Source reset(ByteBuffer bytes, int start, int end) {
+        this.chars = null;
+        this.bytes = bytes;
+        this.pos = start;
+        this.end = end;
+        return this;
+    }
+
+
+    // Drops the reference to the caller's text once decoding is done
+    public void clear() {
+        chars = null;
+        bytes = null;
+    }
+
+
+    public int position() {
+        return pos;
+    }
+
+
+    public void position(int pos) {
+        this.pos = pos;
+    }
+
+
+    public int end() {
+        return end;
+    }
+
+
+    public boolean hasRemaining() {
+        return pos < end;
+    }
+
+
+    // Character at an absolute index of the underlying text
+    public int charAt(int index) {
+        return chars != null ? chars.charAt(index) : bytes.get(index) & 0xFF;
+    }
+
+
+    // Decodes up to length bytes (whole Base64 quanta only) into dst, returning the number of bytes written
+    public int read(byte[] dst, int offset, int length) {
+        int n = offset;
+        int limit = offset + length;
+
+        while (pos < end && n + 3 <= limit) {
+            int c0 = decode(pos);
+            int c1 = pos + 1 < end ? decode(pos + 1) : -2;
+            if (c1 < 0) {
+                throw new IllegalArgumentException("Last unit does not have enough valid bits");
+            }
+            int c2 = pos + 2 < end ? decodeOrPadding(pos + 2) : -2;
+            int c3 = pos + 3 < end && c2 >= 0 ? decodeOrPadding(pos + 3) : -2;
+
+            dst[n++] = (byte) (c0 << 2 | c1 >> 4);
+            if (c2 < 0) {
+                // "xx==" or unpadded "xx" ends the input
+                pos = finish(pos + 2, c2 == -3 ? 2 : 0);
+                break;
+            }
+            dst[n++] = (byte) (c1 << 4 | c2 >> 2);
+            if (c3 < 0) {
+                // "xxx=" or unpadded "xxx" ends the input
+                pos = finish(pos + 3, c3 == -3 ? 1 : 0);
+                break;
+            }
+            dst[n++] = (byte) (c2 << 6 | c3);
+            pos += 4;
+        }
+        return n - offset;
+    }
+
+
+    // Makes sure only the expected padding follows the final quantum
+    private int finish(int index, int padding) {
+        for (int i = 0; i < padding; i++) {
+            if (index + i >= end || charAt(index + i) != '=') {
+                throw new IllegalArgumentException("Input byte array has incorrect ending byte at " + (index + i));
+            }
+        }
+        if (index + padding != end) {
+            throw new IllegalArgumentException("Input byte array has incorrect ending byte at " + (index + padding));
+        }
+        return end;
+    }
+
+
+    private int decode(int index) {
+        int c = charAt(index);
+        int value = c < 128 ? DECODE_TABLE[c] : -1;
+        if (value < 0) {
+            throw new IllegalArgumentException("Illegal base64 character " + Integer.toString(c, 16));
+        }
+        return value;
+    }
+
+
+    // Like decode, but returns -3 for a padding character
+    private int decodeOrPadding(int index) {
+        return charAt(index) == '=' ? -3 : decode(index);
+    }
+
+
+}
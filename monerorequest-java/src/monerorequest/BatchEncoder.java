@@ -0,0 +1,191 @@
+package monerorequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+
+/**
+ * Builds and encodes many payment requests in parallel (e.g. a month's worth of subscription renewals).
+ */
+final class BatchEncoder {
+    // Items encoded per task; each task borrows one codec for its whole chunk
+    private static final int CHUNK_SIZE = 256;
+
+
+    private BatchEncoder() {
+    }
+
+
+    public static Result encode(List<PaymentRequest.Builder> specs) {
+        return encode(specs, ForkJoinPool.commonPool());
+    }
+
+
+    public static Result encode(Stream<PaymentRequest.Builder> specs) {
+        return encode(specs.collect(Collectors.toList()), ForkJoinPool.commonPool());
+    }
+
+
+    // Results are in input order; a failing item records its exception and the rest of the batch carries on
+    public static Result encode(List<PaymentRequest.Builder> specs, ExecutorService executor) {
+        long startNanos = System.nanoTime();
+        int size = specs.size();
+        String[] encoded = new String[size];
+        RuntimeException[] errors = new RuntimeException[size];
+
+        // Sellers' wallets and change indicator URLs repeat across a batch, so each distinct one is only checked once
+        MemoizedCheck walletChecks = new MemoizedCheck(wallet -> Check.wallet(wallet, true, true, false));
+        MemoizedCheck urlChecks = new MemoizedCheck(Check::changeIndicatorUrl);
+
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int chunkStart = 0; chunkStart < size; chunkStart += CHUNK_SIZE) {
+            int from = chunkStart;
+            int to = Math.min(size, chunkStart + CHUNK_SIZE);
+            tasks.add(executor.submit(() -> encodeChunk(specs, from, to, encoded, errors, walletChecks, urlChecks)));
+        }
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while encoding batch", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Batch encoding task failed", e.getCause());
+            }
+        }
+
+        return new Result(encoded, errors, System.nanoTime() - startNanos);
+    }
+
+
+    private static void encodeChunk(List<PaymentRequest.Builder> specs, int from, int to,
+                                    String[] encoded, RuntimeException[] errors,
+                                    MemoizedCheck walletChecks, MemoizedCheck urlChecks) {
+        GzipCodec codec = GzipCodec.acquire();
+        try {
+            for (int i = from; i < to; i++) {
+                try {
+                    PaymentRequest request = specs.get(i).build(walletChecks, urlChecks);
+                    encoded[i] = Encode.paymentRequest(request, "1", codec);
+                } catch (RuntimeException e) {
+                    errors[i] = e;
+                }
+            }
+        } finally {
+            codec.release();
+        }
+    }
+
+
+    /**
+     * Memoizes a String check for the duration of one batch.
+     */
+    private static final class MemoizedCheck implements Predicate<String> {
+        private final ConcurrentHashMap<String, Boolean> results = new ConcurrentHashMap<>();
+        private final Predicate<String> check;
+
+
+        private MemoizedCheck(Predicate<String> check) {
+            this.check = check;
+        }
+
+
+        @Override
+        public boolean test(String value) {
+            // ConcurrentHashMap doesn't allow null keys, and null always fails the checks anyway
+            if (value == null) {
+                return check.test(null);
+            }
+            return results.computeIfAbsent(value, check::test);
+        }
+
+
+    }
+
+
+    /**
+     * Per-item outcome of a batch, in input order, plus throughput numbers.
+     */
+    static final class Result {
+        private final String[] encoded;
+        private final RuntimeException[] errors;
+        private final long elapsedNanos;
+        private final int failureCount;
+
+
+        private Result(String[] encoded, RuntimeException[] errors, long elapsedNanos) {
+            this.encoded = encoded;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+
+            int failures = 0;
+            for (RuntimeException error : errors) {
+                if (error != null) {
+                    failures++;
+                }
+            }
+            this.failureCount = failures;
+        }
+
+
+        public int size() {
+            return encoded.length;
+        }
+
+
+        public boolean isSuccess(int index) {
+            return errors[index] == null;
+        }
+
+
+        // The monero-request string, or null if the item failed
+        public String encoded(int index) {
+            return encoded[index];
+        }
+
+
+        // The reason the item failed, or null if it succeeded
+        public RuntimeException error(int index) {
+            return errors[index];
+        }
+
+
+        public int successCount() {
+            return encoded.length - failureCount;
+        }
+
+
+        public int failureCount() {
+            return failureCount;
+        }
+
+
+        public long elapsedNanos() {
+            return elapsedNanos;
+        }
+
+
+        public double itemsPerSecond() {
+            return elapsedNanos == 0 ? 0 : encoded.length * 1_000_000_000.0 / elapsedNanos;
+        }
+
+
+        @Override
+        public String toString() {
+            return String.format("%d requests (%d failed) in %.1f ms, %.0f requests/s",
+                    size(), failureCount, elapsedNanos / 1_000_000.0, itemsPerSecond());
+        }
+
+
+    }
+
+
+}
@@ -0,0 +1,281 @@
+package monerorequest;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.regex.Pattern;
+
+
+/**
+ * Self-contained micro-benchmarks for creating, reading, encoding, decoding, JSON handling and every Check method.
+ *
+ * Run with: java -cp <classes> monerorequest.Benchmark [--threads=1,4] [--warmup=1000] [--time=2000] [--filter=regex]
+ * Reports throughput, latency and bytes allocated per operation (like JMH's -prof gc) for each thread count.
+ */
+final class Benchmark {
+    private static final String WALLET = "4At3X5rvVypTofgmueN9s9QtrzdRe5BueFrskAZi17BoYbhzysozzoMFB6zWnTKdGC6AxEAbEE5czFR3hbEEJbsm4hCeX2S";
+    private static final String INTEGRATED_WALLET = "4LL9oSLmtpccfufTMvppY6JwXNouMBzSkbLYfpAV5Usx3skxNgYeYTRj5UzqtReoS44qo9mtmXCqY45DJ852K5Jv2bYXZKKQePHES9khPK";
+
+    // Realistic labels, including commas, quotes and non-ASCII text that the old split-based parser got wrong
+    private static final String[] LABELS = {
+            "Unlabeled Monero Payment Request",
+            "Gym membership, monthly (includes sauna, towels)",
+            "Caf\u00e9 \u00abCr\u00e8me\u00bb \u2014 \u6708\u984d\u30d7\u30e9\u30f3 \ud83d\ude80, \"premium\" tier",
+            "Hosting: 2 vCPU, 4GB RAM, 80GB SSD",
+    };
+
+    private static final Map<String, Operation> OPERATIONS = new LinkedHashMap<>();
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Results are compared against this (never equal) so the JIT can't eliminate the benchmarked work
+    private static volatile Object blackhole = new Object();
+
+
+    /**
+     * One benchmarked call; the index picks which payload to use.
+     */
+    interface Operation {
+        Object run(int index) throws Exception;
+    }
+
+
+    private Benchmark() {
+    }
+
+
+    public static void main(String[] args) throws Exception {
+        int[] threadCounts = {1, Runtime.getRuntime().availableProcessors()};
+        long warmupMillis = 1000;
+        long measureMillis = 2000;
+        Pattern filter = Pattern.compile(".*");
+
+        for (String arg : args) {
+            if (arg.startsWith("--threads=")) {
+                String[] counts = arg.substring("--threads=".length()).split(",");
+                threadCounts = new int[counts.length];
+                for (int i = 0; i < counts.length; i++) {
+                    threadCounts[i] = Integer.parseInt(counts[i].trim());
+                }
+            } else if (arg.startsWith("--warmup=")) {
+                warmupMillis = Long.parseLong(arg.substring("--warmup=".length()));
+            } else if (arg.startsWith("--time=")) {
+                measureMillis = Long.parseLong(arg.substring("--time=".length()));
+            } else if (arg.startsWith("--filter=")) {
+                filter = Pattern.compile(arg.substring("--filter=".length()));
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        registerOperations();
+
+        System.out.printf("%-40s %8s %14s %12s %12s%n", "Benchmark", "Threads", "ops/s", "ns/op", "B/op");
+        for (Map.Entry<String, Operation> entry : OPERATIONS.entrySet()) {
+            if (!filter.matcher(entry.getKey()).find()) {
+                continue;
+            }
+            for (int threads : threadCounts) {
+                run(entry.getKey(), entry.getValue(), threads, warmupMillis, measureMillis);
+            }
+        }
+    }
+
+
+    // Adds a benchmark; names are matched against --filter
+    static void register(String name, Operation operation) {
+        OPERATIONS.put(name, operation);
+    }
+
+
+    private static void registerOperations() throws Exception {
+        int payloads = LABELS.length;
+        PaymentRequest[] requests = new PaymentRequest[payloads];
+        String[] encoded = new String[payloads];
+        String[] v1Data = new String[payloads];
+        String[] compact = new String[payloads];
+        String[] v2Data = new String[payloads];
+        String[] json = new String[payloads];
+        byte[][] jsonBytes = new byte[payloads][];
+        String[] paymentIds = new String[payloads];
+        String[] startDates = new String[payloads];
+        List<Map<String, Object>> maps = new ArrayList<>();
+
+        for (int i = 0; i < payloads; i++) {
+            requests[i] = PaymentRequest.builder()
+                    .customLabel(LABELS[i])
+                    .sellersWallet(i % 2 == 0 ? WALLET : INTEGRATED_WALLET)
+                    .currency(i % 2 == 0 ? "USD" : "XMR")
+                    .amount(i % 2 == 0 ? "1,000.50" : "0.25")
+                    .paymentId(0x1234_5678_9abc_def0L + i)
+                    .startDate("2024-02-20T09:59:58.030Z")
+                    .daysPerBillingCycle(30)
+                    .numberOfPayments(12)
+                    .changeIndicatorUrl(i % 2 == 0 ? "https://merchant.example.com/subscriptions/changes" : "")
+                    .build();
+            encoded[i] = MoneroPaymentRequest.create(requests[i]);
+            v1Data[i] = encoded[i].substring("monero-request:1:".length());
+            compact[i] = MoneroPaymentRequest.create(requests[i], "2");
+            v2Data[i] = compact[i].substring("monero-request:2:".length());
+            maps.add(requests[i].toMap());
+            json[i] = JsonUtils.mapToJson(maps.get(i));
+            jsonBytes[i] = json[i].getBytes(StandardCharsets.UTF_8);
+            paymentIds[i] = requests[i].paymentIdHex();
+            startDates[i] = requests[i].startDateString();
+        }
+
+        register("MoneroPaymentRequest.create", i -> {
+            PaymentRequest r = requests[i];
+            return MoneroPaymentRequest.create(r.customLabel(), r.sellersWallet(), r.currency(), r.amount(), r.paymentIdHex(),
+                    r.startDateString(), r.daysPerBillingCycle(), r.numberOfPayments(), r.changeIndicatorUrl());
+        });
+        register("MoneroPaymentRequest.create(request)", i -> MoneroPaymentRequest.create(requests[i]));
+        register("MoneroPaymentRequest.create(request, v2)", i -> MoneroPaymentRequest.create(requests[i], "2"));
+        register("MoneroPaymentRequest.read", i -> MoneroPaymentRequest.read(encoded[i]));
+        register("MoneroPaymentRequest.read(v2)", i -> MoneroPaymentRequest.read(compact[i]));
+        register("MoneroPaymentRequest.readRequest", i -> MoneroPaymentRequest.readRequest(encoded[i]));
+        register("MoneroPaymentRequest.readRequest(v2)", i -> MoneroPaymentRequest.readRequest(compact[i]));
+        PaymentRequestCache cache = new PaymentRequestCache(1024);
+        Projection routing = Projection.of(Validator.Field.SELLERS_WALLET, Validator.Field.PAYMENT_ID, Validator.Field.AMOUNT);
+        ThreadLocal<Projection.Result> projected = ThreadLocal.withInitial(Projection.Result::new);
+        register("Decode.project(routing)", i -> Decode.project(encoded[i], routing, projected.get()));
+        register("Decode.project(routing, v2)", i -> Decode.project(compact[i], routing, projected.get()));
+        register("PaymentRequestCache.readRequest", i -> cache.readRequest(encoded[i]));
+        register("Encode.v1MoneroPaymentRequest", i -> Encode.v1MoneroPaymentRequest(maps.get(i)));
+        register("Encode.v1PaymentRequest", i -> Encode.v1PaymentRequest(requests[i]));
+        register("Decode.v1MoneroPaymentRequest", i -> Decode.v1MoneroPaymentRequest(v1Data[i]));
+        register("Decode.v1PaymentRequest", i -> Decode.v1PaymentRequest(v1Data[i]));
+        register("Encode.v2PaymentRequest", i -> Encode.v2PaymentRequest(requests[i]));
+        register("Decode.v2PaymentRequest", i -> Decode.v2PaymentRequest(v2Data[i]));
+        register("JsonUtils.parseJson(String)", i -> JsonUtils.parseJson(json[i]));
+        register("JsonUtils.parseJson(byte[])", i -> JsonUtils.parseJson(jsonBytes[i], 0, jsonBytes[i].length));
+        register("JsonUtils.mapToJson", i -> JsonUtils.mapToJson(maps.get(i)));
+        register("JsonUtils.paymentRequestToJson", i -> JsonUtils.paymentRequestToJson(requests[i]));
+
+        register("Check.name", i -> Check.name(LABELS[i]));
+        register("Check.currency", i -> Check.currency(requests[i].currency()));
+        register("Check.wallet", i -> Check.wallet(requests[i].sellersWallet(), true, true, false));
+        register("Check.paymentID", i -> Check.paymentID(paymentIds[i]));
+        register("Check.startDate", i -> Check.startDate(startDates[i]));
+        register("Rfc3339.format", i -> Rfc3339.format(requests[i].startDate() + i));
+        register("Rfc3339.parse", i -> Rfc3339.parse(startDates[i]));
+        register("Check.amount", i -> Check.amount(requests[i].amount()));
+        register("Check.daysPerBillingCycle", i -> Check.daysPerBillingCycle(requests[i].daysPerBillingCycle()));
+        register("Check.numberOfPayments", i -> Check.numberOfPayments(requests[i].numberOfPayments()));
+        register("Check.changeIndicatorUrl", i -> Check.changeIndicatorUrl(requests[i].changeIndicatorUrl()));
+        register("MoneroPaymentRequest.makeRandomPaymentId", i -> MoneroPaymentRequest.makeRandomPaymentId());
+        PaymentIdGenerator guardedIds = new PaymentIdGenerator(1 << 20);
+        register("PaymentIdGenerator.nextId(guarded)", i -> guardedIds.nextId());
+        PaymentIndex index = new PaymentIndex();
+        for (PaymentRequest request : requests) {
+            index.put(request);
+        }
+        long paidAt = requests[0].startDate() + PaymentRequest.MILLIS_PER_DAY;
+        register("PaymentIndex.match", i -> index.match(requests[i].paymentId(), 250_000_000_000L, paidAt));
+        register("Amounts.parse", i -> Amounts.parse(requests[i]));
+        Amounts.Converter converter = new Amounts.Converter(new Amounts.Rate("163.42", System.currentTimeMillis()));
+        long[] piconero = new long[payloads];
+        // The whole batch per operation
+        register("Amounts.Converter.toPiconero(batch)", i -> converter.toPiconero(requests, piconero, 0));
+        register("MoneroAddress.networkByte", i -> MoneroAddress.networkByte(requests[i].sellersWallet()));
+        register("MoneroAddress.paymentId", i -> MoneroAddress.paymentId(INTEGRATED_WALLET));
+        // Validators aren't thread-safe, so each measuring thread reuses its own
+        ThreadLocal<Validator> validators = ThreadLocal.withInitial(Validator::new);
+        register("Validator.validate", i -> validators.get().validate(requests[i]));
+
+        printEncodedLengths(encoded, compact);
+    }
+
+
+    // Encoded size is what a QR code has to carry, so compare it per payload before timing anything
+    private static void printEncodedLengths(String[] v1, String[] v2) {
+        System.out.printf("%-40s %8s %8s %8s%n", "Encoded length (chars)", "v1", "v2", "v2/v1");
+        for (int i = 0; i < v1.length; i++) {
+            String label = LABELS[i].length() > 38 ? LABELS[i].substring(0, 35) + "..." : LABELS[i];
+            System.out.printf("%-40s %8d %8d %7.0f%%%n", label, v1[i].length(), v2[i].length(), 100.0 * v2[i].length() / v1[i].length());
+        }
+        System.out.println();
+    }
+
+
+    private static void run(String name, Operation operation, int threads, long warmupMillis, long measureMillis) throws Exception {
+        // Warm up on the same number of threads, then measure
+        measure(operation, threads, warmupMillis);
+        long[] totals = measure(operation, threads, measureMillis);
+
+        long ops = totals[0];
+        long elapsedNanos = totals[1];
+        long allocatedBytes = totals[2];
+        double opsPerSecond = ops * 1_000_000_000.0 * threads / elapsedNanos;
+        double nanosPerOp = (double) elapsedNanos / ops;
+        double bytesPerOp = (double) allocatedBytes / ops;
+        System.out.printf("%-40s %8d %14.0f %12.1f %12.1f%n", name, threads, opsPerSecond, nanosPerOp, bytesPerOp);
+    }
+
+
+    // Returns {total ops, summed per-thread elapsed nanos, total bytes allocated}
+    private static long[] measure(Operation operation, int threads, long millis) throws Exception {
+        long[] ops = new long[threads];
+        long[] elapsed = new long[threads];
+        long[] allocated = new long[threads];
+        Exception[] failure = new Exception[1];
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    long deadline = System.nanoTime() + millis * 1_000_000;
+                    long allocatedBefore = THREADS.getCurrentThreadAllocatedBytes();
+                    long startNanos = System.nanoTime();
+                    long count = 0;
+                    int sink = 0;
+                    do {
+                        // Check the clock every 64 calls to keep timing overhead out of the numbers
+                        for (int i = 0; i < 64; i++) {
+                            // An identity check, so hashing the result isn't timed along with producing it
+                            if (operation.run((int) (count++ % LABELS.length)) == blackhole) {
+                                sink++;
+                            }
+                        }
+                    } while (System.nanoTime() < deadline);
+                    elapsed[worker] = System.nanoTime() - startNanos;
+                    allocated[worker] = THREADS.getCurrentThreadAllocatedBytes() - allocatedBefore;
+                    ops[worker] = count;
+                    if (sink != 0) {
+                        blackhole = sink;
+                    }
+                } catch (Exception e) {
+                    synchronized (failure) {
+                        failure[0] = e;
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "benchmark-" + t);
+            thread.start();
+        }
+
+        start.countDown();
+        done.await();
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+
+        long[] totals = new long[3];
+        for (int t = 0; t < threads; t++) {
+            totals[0] += ops[t];
+            totals[1] += elapsed[t];
+            totals[2] += allocated[t];
+        }
+        return totals;
+    }
+
+
+}
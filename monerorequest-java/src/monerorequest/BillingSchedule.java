@@ -0,0 +1,429 @@
+package monerorequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Indexes subscriptions by the due time of their next unpaid billing period, so finding what is due now
+ * costs time proportional to the number of due subscriptions rather than a full scan.
+ * A primitive binary min-heap with a payment ID to heap position map; thread-safe (all methods lock the schedule).
+ */
+final class BillingSchedule {
+    // Due time of requests without a start date, which are due as soon as they are scheduled
+    private static final long DUE_IMMEDIATELY = Long.MIN_VALUE;
+
+    private long[] dueTimes;
+    private long[] paymentIds;
+    private int[] nextPeriods;
+    private PaymentRequest[] requests;
+    private int size;
+    private final PositionMap positions;
+    private int[] stack = new int[64];
+
+
+    BillingSchedule() {
+        this(1024);
+    }
+
+
+    BillingSchedule(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        dueTimes = new long[capacity];
+        paymentIds = new long[capacity];
+        nextPeriods = new int[capacity];
+        requests = new PaymentRequest[capacity];
+        positions = new PositionMap(capacity);
+    }
+
+
+    // Schedules a request from its first billing period, or replaces the request with the same payment ID
+    // (keeping the periods already paid, but re-timing them from the new request's start date and cycle)
+    public synchronized void put(PaymentRequest request) {
+        long paymentId = request.paymentId();
+        int index = positions.get(paymentId);
+        if (index >= 0) {
+            requests[index] = request;
+            reschedule(index, nextPeriods[index]);
+            return;
+        }
+        if (isFinished(request, 0)) {
+            return;
+        }
+        if (size == dueTimes.length) {
+            grow();
+        }
+        index = size++;
+        paymentIds[index] = paymentId;
+        requests[index] = request;
+        nextPeriods[index] = 0;
+        dueTimes[index] = dueTime(request, 0);
+        positions.put(paymentId, index);
+        siftUp(index);
+    }
+
+
+    // Settles the oldest unpaid period; the subscription moves to its next one, or leaves the schedule after its last.
+    // Returns false if the payment ID isn't scheduled.
+    public synchronized boolean recordPayment(long paymentId) {
+        int index = positions.get(paymentId);
+        if (index < 0) {
+            return false;
+        }
+        reschedule(index, nextPeriods[index] + 1);
+        return true;
+    }
+
+
+    // Records a matched transfer if it pays in full and arrived within the subscription
+    public boolean recordPayment(PaymentIndex.Match match) {
+        if (!match.isInPeriod() || !match.isPaidInFull()) {
+            return false;
+        }
+        return recordPayment(match.request().paymentId());
+    }
+
+
+    // Marks every period up to and including the given one paid (e.g. when restoring state from a ledger)
+    public synchronized boolean markPaidThrough(long paymentId, int period) {
+        int index = positions.get(paymentId);
+        if (index < 0) {
+            return false;
+        }
+        if (period >= nextPeriods[index]) {
+            reschedule(index, period + 1);
+        }
+        return true;
+    }
+
+
+    public synchronized PaymentRequest remove(long paymentId) {
+        int index = positions.get(paymentId);
+        if (index < 0) {
+            return null;
+        }
+        PaymentRequest request = requests[index];
+        removeAt(index);
+        return request;
+    }
+
+
+    public synchronized int size() {
+        return size;
+    }
+
+
+    // Due time of the earliest unpaid period, or Long.MAX_VALUE if nothing is scheduled
+    public synchronized long nextDueTime() {
+        return size == 0 ? Long.MAX_VALUE : dueTimes[0];
+    }
+
+
+    // Every subscription whose next unpaid period is due at or before the given time, earliest first
+    // (O(k log k) for k results, whatever the size of the schedule)
+    public synchronized List<Due> due(long epochMillis) {
+        List<Due> due = new ArrayList<>();
+        if (size == 0 || dueTimes[0] > epochMillis) {
+            return due;
+        }
+
+        // Walk only the part of the heap at or before the time: each visited node is either a result or a child of one
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int index = stack[--top];
+            PaymentRequest request = requests[index];
+            due.add(new Due(request, nextPeriods[index], dueTimes[index], overduePeriods(request, nextPeriods[index], epochMillis)));
+            for (int child = 2 * index + 1; child <= 2 * index + 2 && child < size; child++) {
+                if (dueTimes[child] <= epochMillis) {
+                    if (top == stack.length) {
+                        stack = Arrays.copyOf(stack, top * 2);
+                    }
+                    stack[top++] = child;
+                }
+            }
+        }
+        due.sort((a, b) -> Long.compare(a.dueTime, b.dueTime));
+        return due;
+    }
+
+
+    private void reschedule(int index, int nextPeriod) {
+        PaymentRequest request = requests[index];
+        if (isFinished(request, nextPeriod)) {
+            removeAt(index);
+            return;
+        }
+        nextPeriods[index] = nextPeriod;
+        long previous = dueTimes[index];
+        dueTimes[index] = dueTime(request, nextPeriod);
+        if (dueTimes[index] < previous) {
+            siftUp(index);
+        } else {
+            siftDown(index);
+        }
+    }
+
+
+    // One-time requests and requests without a start date have a single period; numberOfPayments 0 never finishes
+    private static boolean isFinished(PaymentRequest request, int nextPeriod) {
+        if (request.daysPerBillingCycle() == 0 || request.startDate() == PaymentRequest.NO_START_DATE) {
+            return nextPeriod > 0;
+        }
+        return request.numberOfPayments() > 0 && nextPeriod >= request.numberOfPayments();
+    }
+
+
+    private static long dueTime(PaymentRequest request, int period) {
+        return request.startDate() == PaymentRequest.NO_START_DATE ? DUE_IMMEDIATELY : request.periodStart(period);
+    }
+
+
+    // How many unpaid periods (including the next one) have started by the given time
+    private static int overduePeriods(PaymentRequest request, int nextPeriod, long epochMillis) {
+        int current = request.billingPeriod(epochMillis);
+        if (current == PaymentRequest.NO_PERIOD) {
+            // Past the last period: everything from the next unpaid period on is overdue
+            return request.numberOfPayments() > 0 ? request.numberOfPayments() - nextPeriod : 1;
+        }
+        return Math.max(1, current - nextPeriod + 1);
+    }
+
+
+    private void removeAt(int index) {
+        positions.remove(paymentIds[index]);
+        int last = --size;
+        if (index != last) {
+            move(last, index);
+            siftDown(index);
+            siftUp(index);
+        }
+        requests[last] = null;
+    }
+
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (dueTimes[parent] <= dueTimes[index]) {
+                break;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+
+    private void siftDown(int index) {
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && dueTimes[left] < dueTimes[smallest]) {
+                smallest = left;
+            }
+            if (right < size && dueTimes[right] < dueTimes[smallest]) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+
+    private void swap(int a, int b) {
+        long dueTime = dueTimes[a];
+        long paymentId = paymentIds[a];
+        int nextPeriod = nextPeriods[a];
+        PaymentRequest request = requests[a];
+        move(b, a);
+        dueTimes[b] = dueTime;
+        paymentIds[b] = paymentId;
+        nextPeriods[b] = nextPeriod;
+        requests[b] = request;
+        positions.put(paymentId, b);
+    }
+
+
+    private void move(int from, int to) {
+        dueTimes[to] = dueTimes[from];
+        paymentIds[to] = paymentIds[from];
+        nextPeriods[to] = nextPeriods[from];
+        requests[to] = requests[from];
+        positions.put(paymentIds[to], to);
+    }
+
+
+    private void grow() {
+        int capacity = dueTimes.length * 2;
+        dueTimes = Arrays.copyOf(dueTimes, capacity);
+        paymentIds = Arrays.copyOf(paymentIds, capacity);
+        nextPeriods = Arrays.copyOf(nextPeriods, capacity);
+        requests = Arrays.copyOf(requests, capacity);
+    }
+
+
+    /**
+     * A subscription with a billing period due: the period, when it was due, and how many periods are now unpaid.
+     */
+    static final class Due {
+        private final PaymentRequest request;
+        private final int period;
+        private final long dueTime;
+        private final int overduePeriods;
+
+
+        private Due(PaymentRequest request, int period, long dueTime, int overduePeriods) {
+            this.request = request;
+            this.period = period;
+            this.dueTime = dueTime;
+            this.overduePeriods = overduePeriods;
+        }
+
+
+        public PaymentRequest request() {
+            return request;
+        }
+
+
+        // The 0-based period that is due
+        public int period() {
+            return period;
+        }
+
+
+        // Epoch millis (Long.MIN_VALUE for a request without a start date)
+        public long dueTime() {
+            return dueTime;
+        }
+
+
+        // 1 if only the due period is unpaid, more if later periods have started too
+        public int overduePeriods() {
+            return overduePeriods;
+        }
+
+
+        @Override
+        public String toString() {
+            return request.paymentIdHex() + " period " + period + " (" + overduePeriods + " unpaid)";
+        }
+
+
+    }
+
+
+    /**
+     * Open-addressing payment ID to heap index map (linear probing, backward-shift deletion).
+     * Payment ID 0 marks an empty slot, so that ID is held outside the arrays.
+     */
+    private static final class PositionMap {
+        private long[] keys;
+        private int[] values;
+        private int size;
+        private int zeroValue = -1;
+
+
+        private PositionMap(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(16, expected) * 2 - 1) * 2;
+            keys = new long[capacity];
+            values = new int[capacity];
+        }
+
+
+        // The heap index, or -1
+        private int get(long key) {
+            if (key == 0) {
+                return zeroValue;
+            }
+            int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+                if (keys[slot] == 0) {
+                    return -1;
+                }
+            }
+        }
+
+
+        private void put(long key, int value) {
+            if (key == 0) {
+                zeroValue = value;
+                return;
+            }
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    values[slot] = value;
+                    return;
+                }
+                if (keys[slot] == 0) {
+                    keys[slot] = key;
+                    values[slot] = value;
+                    size++;
+                    return;
+                }
+            }
+        }
+
+
+        private void remove(long key) {
+            if (key == 0) {
+                zeroValue = -1;
+                return;
+            }
+            int mask = keys.length - 1;
+            int gap = hash(key) & mask;
+            while (keys[gap] != key) {
+                if (keys[gap] == 0) {
+                    return;
+                }
+                gap = (gap + 1) & mask;
+            }
+            // Pull later entries of the probe run into the gap, so no tombstones are needed
+            for (int next = (gap + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+                int home = hash(keys[next]) & mask;
+                if (((next - home) & mask) >= ((next - gap) & mask)) {
+                    keys[gap] = keys[next];
+                    values[gap] = values[next];
+                    gap = next;
+                }
+            }
+            keys[gap] = 0;
+            size--;
+        }
+
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+
+        private static int hash(long key) {
+            long hash = key * 0x9e3779b97f4a7c15L;
+            return (int) (hash ^ (hash >>> 32));
+        }
+
+
+    }
+
+
+}
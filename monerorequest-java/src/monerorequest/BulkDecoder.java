@@ -0,0 +1,453 @@
+package monerorequest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ * Decodes JSONL archives of monero-request strings through a sliding memory-mapped window, in constant memory.
+ * Each line may be a bare request string, a JSON string, or a JSON object holding the request string in one of its fields.
+ */
+final class BulkDecoder {
+    private static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+    // Lines handed to a worker at a time
+    private static final int BATCH_SIZE = 1024;
+    private static final String PREFIX = "monero-request:";
+
+
+    /**
+     * Receives decoded records; called from worker threads, so implementations must be thread-safe.
+     */
+    interface Sink {
+        void record(long offset, PaymentRequest request);
+
+        void error(long offset, RuntimeException error);
+    }
+
+
+    private BulkDecoder() {
+    }
+
+
+    // Decodes the file in parallel on the common pool, reporting every line to the sink (in no particular order)
+    public static Summary decode(Path file, Sink sink) throws IOException {
+        return decode(file, sink, ForkJoinPool.commonPool(), DEFAULT_WINDOW_SIZE);
+    }
+
+
+    public static Summary decode(Path file, Sink sink, ExecutorService executor, int windowSize) throws IOException {
+        long startNanos = System.nanoTime();
+        AtomicLong decoded = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        AtomicReference<Throwable> sinkFailure = new AtomicReference<>();
+
+        // Bounds the number of batches in flight, which keeps memory use constant however big the file is
+        int maxInFlight = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+        Semaphore inFlight = new Semaphore(maxInFlight);
+
+        try (LineReader reader = new LineReader(file, windowSize)) {
+            Batch batch = new Batch();
+            while (reader.next() && sinkFailure.get() == null) {
+                // A batch only ever refers to one mapped window
+                if (batch.size == BATCH_SIZE || (batch.size > 0 && batch.buffer != reader.buffer)) {
+                    submit(batch, sink, executor, inFlight, decoded, failed, sinkFailure);
+                    batch = new Batch();
+                }
+                batch.add(reader);
+            }
+            if (batch.size > 0) {
+                submit(batch, sink, executor, inFlight, decoded, failed, sinkFailure);
+            }
+            inFlight.acquireUninterruptibly(maxInFlight);
+
+            Throwable failure = sinkFailure.get();
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure != null) {
+                throw new IllegalStateException("Bulk decode sink failed", failure);
+            }
+            return new Summary(decoded.get(), failed.get(), reader.size, System.nanoTime() - startNanos);
+        }
+    }
+
+
+    // Lazily decodes the file in order, one line at a time; close the stream to release the file
+    public static Stream<Record> stream(Path file) throws IOException {
+        return stream(file, DEFAULT_WINDOW_SIZE);
+    }
+
+
+    public static Stream<Record> stream(Path file, int windowSize) throws IOException {
+        LineReader reader = new LineReader(file, windowSize);
+        Spliterator<Record> records = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Record> action) {
+                try {
+                    if (!reader.next()) {
+                        return false;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                PaymentRequest request;
+                try {
+                    request = decodeLine(reader.buffer, reader.start, reader.end);
+                } catch (RuntimeException e) {
+                    action.accept(new Record(reader.offset, null, e));
+                    return true;
+                }
+                action.accept(new Record(reader.offset, request, null));
+                return true;
+            }
+        };
+        return StreamSupport.stream(records, false).onClose(reader::close);
+    }
+
+
+    private static void submit(Batch batch, Sink sink, ExecutorService executor, Semaphore inFlight,
+                               AtomicLong decoded, AtomicLong failed, AtomicReference<Throwable> sinkFailure) {
+        inFlight.acquireUninterruptibly();
+        try {
+            executor.execute(() -> {
+                try {
+                    batch.decode(sink, decoded, failed);
+                } catch (Throwable t) {
+                    sinkFailure.compareAndSet(null, t);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+
+    // Decodes one line: a bare request string, a JSON string, or a JSON object holding the request string
+    private static PaymentRequest decodeLine(ByteBuffer buffer, int start, int end) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("Line is longer than the mapped window");
+        }
+        if (buffer.get(start) == '"') {
+            if (end - start < 2 || buffer.get(end - 1) != '"') {
+                throw new IllegalArgumentException("Unterminated JSON string");
+            }
+            for (int i = start + 1; i < end - 1; i++) {
+                if (buffer.get(i) == '\\') {
+                    return Decode.paymentRequest(jsonTokenizer(buffer, start, end).nextString());
+                }
+            }
+            // No escapes, so the request can be decoded straight out of the mapped file
+            return Decode.paymentRequest(buffer, start + 1, end - 1);
+        }
+
+        if (buffer.get(start) == '{') {
+            JsonTokenizer tokenizer = jsonTokenizer(buffer, start, end);
+            tokenizer.beginObject();
+            while (tokenizer.nextField()) {
+                tokenizer.nextName();
+                if (tokenizer.peekToken() == '"') {
+                    String value = tokenizer.nextString();
+                    if (value.startsWith(PREFIX)) {
+                        return Decode.paymentRequest(value);
+                    }
+                } else {
+                    tokenizer.skipValue();
+                }
+            }
+            throw new IllegalArgumentException("No monero-request string in JSON object");
+        }
+
+        return Decode.paymentRequest(buffer, start, end);
+    }
+
+
+    private static JsonTokenizer jsonTokenizer(ByteBuffer buffer, int start, int end) {
+        byte[] line = new byte[end - start];
+        buffer.get(start, line, 0, line.length);
+        return new JsonTokenizer().reset(line, 0, line.length);
+    }
+
+
+    /**
+     * Splits a file into lines through a memory-mapped window that slides forward as lines are consumed.
+     */
+    private static final class LineReader implements Closeable {
+        private final FileChannel channel;
+        private final long size;
+        private final int windowSize;
+        private MappedByteBuffer window;
+        private long windowStart;
+        private int windowLength;
+        private int pos;
+
+        // The current line, trimmed of surrounding whitespace (a null buffer marks a line too long to map)
+        private ByteBuffer buffer;
+        private int start;
+        private int end;
+        private long offset;
+
+
+        private LineReader(Path file, int windowSize) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.size = channel.size();
+            this.windowSize = windowSize;
+        }
+
+
+        // Moves to the next non-blank line, returning false at the end of the file
+        private boolean next() throws IOException {
+            while (true) {
+                if (window == null || pos >= windowLength) {
+                    if (windowStart + pos >= size) {
+                        return false;
+                    }
+                    map(windowStart + pos);
+                }
+
+                int newline = indexOfNewline(pos);
+                if (newline < 0) {
+                    if (windowStart + windowLength >= size) {
+                        newline = windowLength; // Last line without a trailing newline
+                    } else if (pos > 0) {
+                        map(windowStart + pos); // Slide the window so the line starts at its beginning
+                        continue;
+                    } else {
+                        // Report the oversized line (as a null buffer) and carry on after its newline
+                        offset = windowStart;
+                        buffer = null;
+                        skipPastNewline();
+                        return true;
+                    }
+                }
+
+                int lineStart = pos;
+                int lineEnd = newline;
+                pos = newline + 1;
+                while (lineStart < lineEnd && isWhitespace(window.get(lineStart))) {
+                    lineStart++;
+                }
+                while (lineEnd > lineStart && isWhitespace(window.get(lineEnd - 1))) {
+                    lineEnd--;
+                }
+                if (lineStart < lineEnd) {
+                    buffer = window;
+                    start = lineStart;
+                    end = lineEnd;
+                    offset = windowStart + lineStart;
+                    return true;
+                }
+            }
+        }
+
+
+        private void skipPastNewline() throws IOException {
+            while (windowStart + windowLength < size) {
+                map(windowStart + windowLength);
+                int newline = indexOfNewline(0);
+                if (newline >= 0) {
+                    pos = newline + 1;
+                    return;
+                }
+            }
+            pos = windowLength;
+        }
+
+
+        private void map(long position) throws IOException {
+            windowStart = position;
+            windowLength = (int) Math.min(windowSize, size - position);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowLength);
+            pos = 0;
+        }
+
+
+        private int indexOfNewline(int from) {
+            for (int i = from; i < windowLength; i++) {
+                if (window.get(i) == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+
+        private static boolean isWhitespace(byte b) {
+            return b == ' ' || b == '\t' || b == '\r';
+        }
+
+
+        @Override
+        public void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+
+    }
+
+
+    /**
+     * Up to BATCH_SIZE lines from one mapped window, decoded together by one worker.
+     */
+    private static final class Batch {
+        private final int[] starts = new int[BATCH_SIZE];
+        private final int[] ends = new int[BATCH_SIZE];
+        private final long[] offsets = new long[BATCH_SIZE];
+        private ByteBuffer buffer;
+        private int size;
+
+
+        private void add(LineReader reader) {
+            buffer = reader.buffer;
+            starts[size] = reader.start;
+            ends[size] = reader.end;
+            offsets[size] = reader.offset;
+            size++;
+        }
+
+
+        private void decode(Sink sink, AtomicLong decoded, AtomicLong failed) {
+            long decodedCount = 0;
+            long failedCount = 0;
+            for (int i = 0; i < size; i++) {
+                PaymentRequest request;
+                try {
+                    request = decodeLine(buffer, starts[i], ends[i]);
+                } catch (RuntimeException e) {
+                    failedCount++;
+                    sink.error(offsets[i], e);
+                    continue;
+                }
+                decodedCount++;
+                sink.record(offsets[i], request);
+            }
+            decoded.addAndGet(decodedCount);
+            failed.addAndGet(failedCount);
+        }
+
+
+    }
+
+
+    /**
+     * One decoded line: either the request or the reason it could not be decoded, plus its byte offset in the file.
+     */
+    static final class Record {
+        private final long offset;
+        private final PaymentRequest request;
+        private final RuntimeException error;
+
+
+        private Record(long offset, PaymentRequest request, RuntimeException error) {
+            this.offset = offset;
+            this.request = request;
+            this.error = error;
+        }
+
+
+        public long offset() {
+            return offset;
+        }
+
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+
+        // The decoded request, or null if the line was bad
+        public PaymentRequest request() {
+            return request;
+        }
+
+
+        // Why the line could not be decoded, or null if it succeeded
+        public RuntimeException error() {
+            return error;
+        }
+
+
+        @Override
+        public String toString() {
+            return offset + ": " + (error == null ? request : error);
+        }
+
+
+    }
+
+
+    /**
+     * Totals for one bulk decode run.
+     */
+    static final class Summary {
+        private final long decoded;
+        private final long failed;
+        private final long bytes;
+        private final long elapsedNanos;
+
+
+        private Summary(long decoded, long failed, long bytes, long elapsedNanos) {
+            this.decoded = decoded;
+            this.failed = failed;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+
+        public long decoded() {
+            return decoded;
+        }
+
+
+        public long failed() {
+            return failed;
+        }
+
+
+        public long bytes() {
+            return bytes;
+        }
+
+
+        public long elapsedNanos() {
+            return elapsedNanos;
+        }
+
+
+        public double recordsPerSecond() {
+            return elapsedNanos == 0 ? 0 : (decoded + failed) * 1_000_000_000.0 / elapsedNanos;
+        }
+
+
+        @Override
+        public String toString() {
+            return String.format("%d records (%d failed) from %d bytes in %.1f ms, %.0f records/s",
+                    decoded + failed, failed, bytes, elapsedNanos / 1_000_000.0, recordsPerSecond());
+        }
+
+
+    }
+
+
+}
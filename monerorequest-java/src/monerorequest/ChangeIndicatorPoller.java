@@ -0,0 +1,481 @@
+package monerorequest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * Polls subscriptions' change_indicator_urls and reports when a merchant's endpoint changes, disappears or fails.
+ * Each distinct URL is polled once per round however many subscriptions share it, with conditional requests
+ * (ETag / If-Modified-Since), jittered timing and a limit on concurrent requests per host.
+ */
+final class ChangeIndicatorPoller implements Closeable {
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(10);
+    private static final double DEFAULT_JITTER = 0.1;
+    // Platform threads used when virtual threads aren't available; each one blocks for a whole request
+    private static final int POLLING_THREADS = 64;
+
+    private final HttpClient client;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final ScheduledExecutorService timer;
+    private final long intervalMillis;
+    private final double jitter;
+    private final int maxPerHost;
+    private final Listener listener;
+    private final ConcurrentHashMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Host> hosts = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+
+    /**
+     * Receives change events; called from polling threads, so implementations must be thread-safe.
+     */
+    interface Listener {
+        void onEvent(Event event);
+    }
+
+
+    /**
+     * What happened to an endpoint. GONE and FAILED are only reported when an endpoint enters that state.
+     */
+    enum Type {
+        // The response body differs from the previous successful poll
+        CHANGED,
+        // 404 or 410: the merchant removed the endpoint, e.g. because the subscription was cancelled
+        GONE,
+        // Any other error status, or the request itself failed
+        FAILED
+    }
+
+
+    // Polls on virtual threads when the runtime has them, otherwise on a bounded pool; close() shuts it down
+    ChangeIndicatorPoller(Duration interval, int maxPerHost, Listener listener) {
+        this(null, newPollingExecutor(), true, interval, DEFAULT_JITTER, maxPerHost, listener);
+    }
+
+
+    // A null client means a default one is built; jitter is the fraction (0 to 1) by which intervals vary.
+    // The executor stays the caller's: close() doesn't shut it down
+    ChangeIndicatorPoller(HttpClient client, ExecutorService executor, Duration interval, double jitter, int maxPerHost, Listener listener) {
+        this(client, executor, false, interval, jitter, maxPerHost, listener);
+    }
+
+
+    private ChangeIndicatorPoller(HttpClient client, ExecutorService executor, boolean ownsExecutor, Duration interval,
+                                  double jitter, int maxPerHost, Listener listener) {
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter must be between 0 and 1");
+        }
+        if (maxPerHost <= 0) {
+            throw new IllegalArgumentException("maxPerHost must be greater than 0");
+        }
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        // The client keeps its own executor for response handling: polls block in send(), and if they filled a
+        // bounded polling executor, the responses they wait on would never be processed
+        this.client = client != null ? client : HttpClient.newBuilder()
+                .connectTimeout(DEFAULT_TIMEOUT)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.intervalMillis = interval.toMillis();
+        this.jitter = jitter;
+        this.maxPerHost = maxPerHost;
+        this.listener = listener;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "change-indicator-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    // Starts polling the request's change_indicator_url (requests without one are ignored)
+    public void register(PaymentRequest request) {
+        String url = request.changeIndicatorUrl();
+        if (url.isEmpty()) {
+            return;
+        }
+        if (!Check.changeIndicatorUrl(url)) {
+            throw new IllegalArgumentException("changeIndicatorUrl is not a string, or is not a valid URL.");
+        }
+        if (!isPollable(URI.create(url))) {
+            // e.g. a host name with '_', which Check accepts but URI (and so HttpClient) can't resolve to a host
+            throw new IllegalArgumentException("changeIndicatorUrl can't be polled: it needs an http or https scheme and a host name.");
+        }
+        if (closed) {
+            throw new IllegalStateException("Poller is closed");
+        }
+        // Added inside compute so a concurrent unregister can't remove the endpoint between lookup and add
+        Endpoint endpoint = endpoints.compute(url, (key, existing) -> {
+            Endpoint current = existing != null ? existing : new Endpoint(key);
+            current.paymentIds.add(request.paymentId());
+            return current;
+        });
+        if (endpoint.scheduled.compareAndSet(false, true)) {
+            // Spread first polls over a whole interval, so a bulk registration doesn't poll everything at once
+            schedule(endpoint, ThreadLocalRandom.current().nextLong(intervalMillis));
+        }
+    }
+
+
+    // Stops polling for the request; the URL itself stops being polled once no subscription uses it
+    public void unregister(PaymentRequest request) {
+        endpoints.computeIfPresent(request.changeIndicatorUrl(), (url, endpoint) -> {
+            endpoint.paymentIds.remove(request.paymentId());
+            if (!endpoint.paymentIds.isEmpty()) {
+                return endpoint;
+            }
+            ScheduledFuture<?> next = endpoint.next;
+            if (next != null) {
+                next.cancel(false);
+            }
+            return null;
+        });
+    }
+
+
+    // Number of distinct URLs being polled
+    public int endpointCount() {
+        return endpoints.size();
+    }
+
+
+    // Polls every endpoint right away and waits for all of them (outside the regular schedule)
+    public void pollNow() throws InterruptedException {
+        List<Endpoint> snapshot = new ArrayList<>(endpoints.values());
+        CountDownLatch done = new CountDownLatch(snapshot.size());
+        for (Endpoint endpoint : snapshot) {
+            dispatch(endpoint, done::countDown);
+        }
+        done.await();
+    }
+
+
+    // Stops polling, and shuts down the executor if the poller created it
+    @Override
+    public void close() {
+        closed = true;
+        timer.shutdownNow();
+        if (ownsExecutor) {
+            executor.shutdownNow();
+        }
+    }
+
+
+    private void schedule(Endpoint endpoint, long delayMillis) {
+        if (closed || endpoints.get(endpoint.url) != endpoint) {
+            return;
+        }
+        ScheduledFuture<?> next = timer.schedule(() -> dispatch(endpoint, () -> schedule(endpoint, jitteredInterval())),
+                delayMillis, TimeUnit.MILLISECONDS);
+        endpoint.next = next;
+        // unregister may have removed the endpoint after the check above, before it could see this future
+        if (endpoints.get(endpoint.url) != endpoint) {
+            next.cancel(false);
+        }
+    }
+
+
+    // Polls the endpoint once a permit for its host is free, then runs then; never blocks a thread waiting for one
+    private void dispatch(Endpoint endpoint, Runnable then) {
+        Host host = hosts.computeIfAbsent(endpoint.uri.getHost(), key -> new Host());
+        Runnable task = () -> {
+            try {
+                poll(endpoint);
+            } finally {
+                then.run();
+            }
+        };
+        if (host.admit(task)) {
+            run(host, task);
+        }
+    }
+
+
+    // Runs the task, then hands the host's permit straight to the next queued poll, if any
+    private void run(Host host, Runnable task) {
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    Runnable queued = host.next();
+                    if (queued != null) {
+                        run(host, queued);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The task never ran, so its permit has to be given back or the host would stay blocked for good
+            host.release();
+            throw e;
+        }
+    }
+
+
+    private static boolean isPollable(URI uri) {
+        String scheme = uri.getScheme();
+        return uri.getHost() != null && ("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme));
+    }
+
+
+    private long jitteredInterval() {
+        double factor = 1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        return Math.max(1, (long) (intervalMillis * factor));
+    }
+
+
+    private void poll(Endpoint endpoint) {
+        // Never overlap two polls of the same URL
+        if (!endpoint.polling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            fetch(endpoint);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            endpoint.polling.set(false);
+        }
+    }
+
+
+    private void fetch(Endpoint endpoint) throws InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(endpoint.uri).timeout(DEFAULT_TIMEOUT).GET();
+        if (endpoint.etag != null) {
+            request.header("If-None-Match", endpoint.etag);
+        }
+        if (endpoint.lastModified != null) {
+            request.header("If-Modified-Since", endpoint.lastModified);
+        }
+
+        HttpResponse<byte[]> response;
+        try {
+            response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (IOException e) {
+            transition(endpoint, Type.FAILED, 0, null, e);
+            return;
+        }
+
+        int status = response.statusCode();
+        if (status == 304) {
+            endpoint.state = null;
+            return;
+        }
+        if (status == 404 || status == 410) {
+            transition(endpoint, Type.GONE, status, null, null);
+            return;
+        }
+        if (status < 200 || status >= 300) {
+            transition(endpoint, Type.FAILED, status, null, null);
+            return;
+        }
+
+        endpoint.etag = response.headers().firstValue("ETag").orElse(null);
+        endpoint.lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+        byte[] digest = sha256(response.body());
+        byte[] previous = endpoint.digest;
+        endpoint.digest = digest;
+        endpoint.state = null;
+        // The first successful poll only records a baseline
+        if (previous != null && !Arrays.equals(previous, digest)) {
+            emit(endpoint, Type.CHANGED, status, new String(response.body(), StandardCharsets.UTF_8), null);
+        }
+    }
+
+
+    // Reports GONE or FAILED once, when the endpoint enters that state
+    private void transition(Endpoint endpoint, Type type, int status, String body, Throwable error) {
+        if (endpoint.state != type) {
+            endpoint.state = type;
+            emit(endpoint, type, status, body, error);
+        }
+    }
+
+
+    private void emit(Endpoint endpoint, Type type, int status, String body, Throwable error) {
+        long[] paymentIds = endpoint.paymentIds.stream().mapToLong(Long::longValue).toArray();
+        listener.onEvent(new Event(type, endpoint.url, status, paymentIds, body, error));
+    }
+
+
+    private static byte[] sha256(byte[] body) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(body);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+
+    private static ExecutorService newPollingExecutor() {
+        try {
+            // Virtual threads (Java 21+) make a poll blocked on a slow merchant nearly free
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(POLLING_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "change-indicator-poller");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+
+    /**
+     * One polled URL, shared by every subscription that uses it. Only one poll of it runs at a time.
+     */
+    private static final class Endpoint {
+        private final String url;
+        private final URI uri;
+        private final Set<Long> paymentIds = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean polling = new AtomicBoolean();
+        private volatile ScheduledFuture<?> next;
+        // Written only while polling
+        private volatile String etag;
+        private volatile String lastModified;
+        private volatile byte[] digest;
+        private volatile Type state;
+
+
+        private Endpoint(String url) {
+            this.url = url;
+            this.uri = URI.create(url);
+        }
+
+
+    }
+
+
+    /**
+     * Polls in flight for one host, and the polls waiting for one of its maxPerHost permits.
+     */
+    private final class Host {
+        private final ArrayDeque<Runnable> waiting = new ArrayDeque<>();
+        private int running;
+
+
+        // True if the task may run now; otherwise it is queued until a running poll finishes
+        private synchronized boolean admit(Runnable task) {
+            if (running < maxPerHost) {
+                running++;
+                return true;
+            }
+            waiting.add(task);
+            return false;
+        }
+
+
+        // The next queued task, which takes over the finished poll's permit, or null once the queue is empty
+        private synchronized Runnable next() {
+            Runnable task = waiting.poll();
+            if (task == null) {
+                running--;
+            }
+            return task;
+        }
+
+
+        // Gives back a permit whose task couldn't be started
+        private synchronized void release() {
+            running--;
+        }
+
+
+    }
+
+
+    /**
+     * A change to one URL, with the payment IDs of every subscription that uses it.
+     */
+    static final class Event {
+        private final Type type;
+        private final String url;
+        private final int status;
+        private final long[] paymentIds;
+        private final String body;
+        private final Throwable error;
+
+
+        private Event(Type type, String url, int status, long[] paymentIds, String body, Throwable error) {
+            this.type = type;
+            this.url = url;
+            this.status = status;
+            this.paymentIds = paymentIds;
+            this.body = body;
+            this.error = error;
+        }
+
+
+        public Type type() {
+            return type;
+        }
+
+
+        public String url() {
+            return url;
+        }
+
+
+        // The HTTP status, or 0 if the request failed without one
+        public int status() {
+            return status;
+        }
+
+
+        public long[] paymentIds() {
+            return paymentIds.clone();
+        }
+
+
+        // The new response body for CHANGED events, otherwise null
+        public String body() {
+            return body;
+        }
+
+
+        // Why the request failed, for FAILED events without a status
+        public Throwable error() {
+            return error;
+        }
+
+
+        @Override
+        public String toString() {
+            return type + " " + url + " (" + (status == 0 ? String.valueOf(error) : "HTTP " + status) + ", "
+                    + paymentIds.length + " subscriptions)";
+        }
+
+
+    }
+
+
+}
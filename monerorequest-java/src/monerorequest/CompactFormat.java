@@ -0,0 +1,421 @@
+package monerorequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.ZipException;
+
+
+/**
+ * The version 2 ("compact") encoding: the payment request in a fixed field order, with the numbers, payment ID and wallet
+ * packed as binary and the text raw-deflated against a preset dictionary whenever that comes out smaller. Roughly half
+ * the length of version 1's gzipped JSON, so QR codes are much less dense.
+ *
+ * Before (unpadded) Base64 the bytes are, in order:
+ *   mode                                          STORED or DEFLATED, for the text section
+ *   flags                                         wallet, currency and start date encodings
+ *   payment_id                                    8 bytes, big-endian
+ *   start_date                                    zigzag varint of epoch millis, only if HAS_START_DATE is set
+ *   days_per_billing_cycle, number_of_payments    zigzag varints
+ *   sellers_wallet                                the address's 69 or 77 Base58-decoded bytes, if flagged
+ * then the text section, as is or as a deflate stream:
+ *   sellers_wallet                                a string, only if the wallet isn't packed
+ *   currency                                      a string, only if no currency code is set
+ *   amount, custom_label, change_indicator_url    strings
+ * and finally the CRC32 of everything before it (4 bytes, big-endian). Strings are a varint byte length followed by UTF-8.
+ */
+final class CompactFormat {
+    static final int STORED = 0;
+    static final int DEFLATED = 1;
+
+    // Flag bits: two for the wallet, two for the currency, one for the start date; the rest must be zero
+    private static final int WALLET_MASK = 0x03;
+    private static final int WALLET_STANDARD = 0x01;
+    private static final int WALLET_INTEGRATED = 0x02;
+    private static final int CURRENCY_MASK = 0x0c;
+    private static final int CURRENCY_XMR = 0x04;
+    private static final int CURRENCY_USD = 0x08;
+    private static final int HAS_START_DATE = 0x10;
+    private static final int KNOWN_FLAGS = 0x1f;
+
+    private static final int CRC_SIZE = 4;
+    private static final int MAX_VARINT_SIZE = 10;
+    private static final int MAX_WALLET_BYTES = 77;
+
+    // Common text of labels, amounts and URLs, most likely last (deflate codes nearer matches more cheaply).
+    // Part of the format: changing a single byte breaks every version 2 request already issued.
+    private static final byte[] DICTIONARY = ("Donation Invoice Order Premium Basic Pro Plan Hosting Membership tier plan "
+            + "Weekly Yearly Annual Monthly subscription Subscription Monero Payment Request "
+            + ".onion/.i2p/.io/.net/.org/api/v1/changes/change-indicator/subscriptions/merchant."
+            + "https://www..com/0.00,000.00").getBytes(StandardCharsets.US_ASCII);
+
+
+    private CompactFormat() {
+    }
+
+
+    // Packs, compresses and Base64-encodes the request (without the "monero-request:2:" prefix)
+    static String encode(PaymentRequest request, GzipCodec codec) {
+        long compressStart = Metrics.start();
+        String wallet = request.sellersWallet();
+        int capacity = 1 + 8 + 3 * MAX_VARINT_SIZE + MAX_WALLET_BYTES + 5 * MAX_VARINT_SIZE
+                + 3 * (wallet.length() + request.currency().length() + request.amount().length()
+                + request.customLabel().length() + request.changeIndicatorUrl().length());
+        byte[] packed = codec.input(capacity);
+        int headerLength = packHeader(request, packed);
+        int length = packText(request, packed, headerLength);
+
+        // Deflate only pays off for longer labels and URLs (the binary header never compresses); keep whichever is shorter
+        int n = codec.deflate(packed, headerLength, length - headerLength, DICTIONARY, 1 + headerLength);
+        byte[] output = codec.output(1 + length + CRC_SIZE);
+        if (n < 1 + length) {
+            output[0] = DEFLATED;
+            System.arraycopy(packed, 0, output, 1, headerLength);
+        } else {
+            output[0] = STORED;
+            System.arraycopy(packed, 0, output, 1, length);
+            n = 1 + length;
+        }
+        writeIntBE(output, n, codec.crc32(output, 0, n));
+        n += CRC_SIZE;
+        Metrics.stop(Metrics.Stage.COMPRESS, compressStart);
+        Metrics.encoded(length, n);
+
+        long base64Start = Metrics.start();
+        String encoded = codec.outputToBase64(n, false);
+        Metrics.stop(Metrics.Stage.BASE64_ENCODE, base64Start);
+        return encoded;
+    }
+
+
+    // Decodes the rest of the Base64 text; the text section may inflate to at most limits.maxOutputLength bytes
+    static PaymentRequest decode(GzipCodec codec, Base64Source source, DecodeLimits limits) throws ZipException {
+        long inflateStart = Metrics.start();
+        int capacity = (source.end() - source.position() + 3) / 4 * 3;
+        byte[] bytes = codec.input(capacity);
+        int n;
+        try {
+            n = source.read(bytes, 0, capacity);
+        } finally {
+            source.clear();
+        }
+        if (n < 1 + CRC_SIZE) {
+            throw new ZipException("Compact payment request is truncated");
+        }
+        // Checked first, so damaged text is never inflated
+        int end = n - CRC_SIZE;
+        if (codec.crc32(bytes, 0, end) != readIntBE(bytes, end)) {
+            throw new ZipException("Corrupt compact payment request checksum");
+        }
+        int mode = bytes[0];
+        if (mode != STORED && mode != DEFLATED) {
+            throw new ZipException("Unknown compact payment request mode " + mode);
+        }
+
+        Reader header = new Reader(bytes, 1, end);
+        int flags = header.readByte();
+        if ((flags & ~KNOWN_FLAGS) != 0 || (flags & WALLET_MASK) == WALLET_MASK || (flags & CURRENCY_MASK) == CURRENCY_MASK) {
+            throw new IllegalArgumentException("Unsupported compact payment request flags " + flags);
+        }
+        long paymentId = header.readLong();
+        long startDate = (flags & HAS_START_DATE) != 0 ? unzigzag(header.readVarLong()) : PaymentRequest.NO_START_DATE;
+        if (startDate != PaymentRequest.NO_START_DATE && (startDate < Rfc3339.MIN_EPOCH_MILLIS || startDate > Rfc3339.MAX_EPOCH_MILLIS)) {
+            throw new IllegalArgumentException("startDate is outside years 0000 to 9999");
+        }
+        int daysPerBillingCycle = header.readCount();
+        int numberOfPayments = header.readCount();
+        String sellersWallet = null;
+        if ((flags & WALLET_MASK) != 0) {
+            sellersWallet = header.readAddress((flags & WALLET_MASK) == WALLET_INTEGRATED ? MAX_WALLET_BYTES : MAX_WALLET_BYTES - 8);
+        }
+
+        Reader text;
+        int textLength;
+        if (mode == DEFLATED) {
+            textLength = codec.inflate(bytes, header.pos, end - header.pos, DICTIONARY, limits.maxOutputLength());
+            text = new Reader(codec.output(), 0, textLength);
+        } else {
+            textLength = end - header.pos;
+            if (textLength > limits.maxOutputLength()) {
+                throw new DecodeException(DecodeException.Reason.OUTPUT_TOO_LARGE, limits.maxOutputLength());
+            }
+            text = header;
+        }
+        Metrics.stop(Metrics.Stage.INFLATE, inflateStart);
+        Metrics.decoded(n, header.pos - 1 + textLength);
+
+        if (sellersWallet == null) {
+            sellersWallet = text.readString();
+        }
+        String currency;
+        switch (flags & CURRENCY_MASK) {
+            case CURRENCY_XMR: currency = "XMR"; break;
+            case CURRENCY_USD: currency = "USD"; break;
+            default: currency = text.readString();
+        }
+        String amount = text.readString();
+        String customLabel = text.readString();
+        String changeIndicatorUrl = text.readString();
+        if (text.pos != text.end) {
+            throw new IllegalArgumentException("Unexpected data after the compact payment request");
+        }
+
+        return new PaymentRequest(customLabel, sellersWallet, currency, amount, paymentId, startDate,
+                daysPerBillingCycle, numberOfPayments, changeIndicatorUrl);
+    }
+
+
+    // The payment request fields of a Map (as produced by PaymentRequest.toMap or the version 1 decoder).
+    // Missing fields get the usual defaults; keys the fixed layout has no place for are rejected rather than dropped.
+    static PaymentRequest fromMap(Map<String, Object> map) {
+        String customLabel = "";
+        String sellersWallet = "";
+        String currency = "";
+        String amount = "";
+        long paymentId = 0;
+        long startDate = PaymentRequest.NO_START_DATE;
+        int daysPerBillingCycle = 0;
+        int numberOfPayments = 0;
+        String changeIndicatorUrl = "";
+
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            String key = entry.getKey();
+            Object value = entry.getValue();
+            switch (key) {
+                case "custom_label": customLabel = string(key, value); break;
+                case "sellers_wallet": sellersWallet = string(key, value); break;
+                case "currency": currency = string(key, value); break;
+                case "amount": amount = string(key, value); break;
+                case "payment_id": paymentId = PaymentRequest.parsePaymentId(string(key, value)); break;
+                case "start_date":
+                    String startDateString = string(key, value);
+                    startDate = startDateString.isEmpty() ? PaymentRequest.NO_START_DATE : PaymentRequest.parseStartDate(startDateString);
+                    break;
+                case "days_per_billing_cycle": daysPerBillingCycle = integer(key, value); break;
+                case "number_of_payments": numberOfPayments = integer(key, value); break;
+                case "change_indicator_url": changeIndicatorUrl = string(key, value); break;
+                default: throw new IllegalArgumentException("Version 2 has no field " + key);
+            }
+        }
+        return new PaymentRequest(customLabel, sellersWallet, currency, amount, paymentId, startDate,
+                daysPerBillingCycle, numberOfPayments, changeIndicatorUrl);
+    }
+
+
+    // Writes the flags and binary fields from the start of the buffer, returning their length
+    private static int packHeader(PaymentRequest request, byte[] bytes) {
+        int flags = 0;
+        String currency = request.currency();
+        if ("XMR".equals(currency)) {
+            flags |= CURRENCY_XMR;
+        } else if ("USD".equals(currency)) {
+            flags |= CURRENCY_USD;
+        }
+        if (request.startDate() != PaymentRequest.NO_START_DATE) {
+            flags |= HAS_START_DATE;
+        }
+
+        writeLongBE(bytes, 1, request.paymentId());
+        int p = 1 + 8;
+        if ((flags & HAS_START_DATE) != 0) {
+            p = writeVarLong(bytes, p, zigzag(request.startDate()));
+        }
+        p = writeVarLong(bytes, p, zigzag(request.daysPerBillingCycle()));
+        p = writeVarLong(bytes, p, zigzag(request.numberOfPayments()));
+
+        // Any 95 or 106 character Base58 text packs (the checksum isn't needed), and unpacks to exactly the same text
+        int walletBytes = MoneroAddress.decode(request.sellersWallet(), bytes, p);
+        if (walletBytes > 0) {
+            flags |= walletBytes == MAX_WALLET_BYTES ? WALLET_INTEGRATED : WALLET_STANDARD;
+            p += walletBytes;
+        }
+
+        bytes[0] = (byte) flags;
+        return p;
+    }
+
+
+    // Writes the text section after the header, returning the end offset
+    private static int packText(PaymentRequest request, byte[] bytes, int p) {
+        int flags = bytes[0];
+        if ((flags & WALLET_MASK) == 0) {
+            p = writeString(bytes, p, request.sellersWallet());
+        }
+        if ((flags & CURRENCY_MASK) == 0) {
+            p = writeString(bytes, p, request.currency());
+        }
+        p = writeString(bytes, p, request.amount());
+        p = writeString(bytes, p, request.customLabel());
+        return writeString(bytes, p, request.changeIndicatorUrl());
+    }
+
+
+    // Writes the string's UTF-8 bytes after their varint length
+    private static int writeString(byte[] bytes, int p, String string) {
+        // Assume a one-byte length (strings under 128 bytes), and move the bytes along if it takes more
+        int length = GzipCodec.writeUtf8(string, bytes, p + 1) - (p + 1);
+        int lengthSize = 1;
+        for (int rest = length >>> 7; rest != 0; rest >>>= 7) {
+            lengthSize++;
+        }
+        if (lengthSize > 1) {
+            System.arraycopy(bytes, p + 1, bytes, p + lengthSize, length);
+        }
+        writeVarLong(bytes, p, length);
+        return p + lengthSize + length;
+    }
+
+
+    private static int writeVarLong(byte[] bytes, int p, long value) {
+        while ((value & ~0x7fL) != 0) {
+            bytes[p++] = (byte) (value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        bytes[p++] = (byte) value;
+        return p;
+    }
+
+
+    private static void writeLongBE(byte[] bytes, int p, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            bytes[p++] = (byte) (value >>> shift);
+        }
+    }
+
+
+    private static void writeIntBE(byte[] bytes, int p, int value) {
+        bytes[p] = (byte) (value >>> 24);
+        bytes[p + 1] = (byte) (value >>> 16);
+        bytes[p + 2] = (byte) (value >>> 8);
+        bytes[p + 3] = (byte) value;
+    }
+
+
+    private static int readIntBE(byte[] bytes, int p) {
+        return (bytes[p] & 0xff) << 24 | (bytes[p + 1] & 0xff) << 16 | (bytes[p + 2] & 0xff) << 8 | (bytes[p + 3] & 0xff);
+    }
+
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+
+    private static String string(String key, Object value) {
+        if (!(value instanceof String)) {
+            throw new IllegalArgumentException(key + " is not a string.");
+        }
+        return (String) value;
+    }
+
+
+    private static int integer(String key, Object value) {
+        if (!(value instanceof Number)) {
+            throw new IllegalArgumentException(key + " is not an integer.");
+        }
+        return ((Number) value).intValue();
+    }
+
+
+    /**
+     * Bounds-checked cursor over a packed request.
+     */
+    private static final class Reader {
+        private final byte[] bytes;
+        private final int end;
+        private int pos;
+
+
+        private Reader(byte[] bytes, int pos, int end) {
+            this.bytes = bytes;
+            this.pos = pos;
+            this.end = end;
+        }
+
+
+        int readByte() {
+            require(1);
+            return bytes[pos++] & 0xff;
+        }
+
+
+        long readLong() {
+            require(8);
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = value << 8 | (bytes[pos++] & 0xff);
+            }
+            return value;
+        }
+
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in compact payment request");
+        }
+
+
+        int readVarInt() {
+            long value = unzigzag(readVarLong());
+            if (value != (int) value) {
+                throw new IllegalArgumentException("Integer out of range in compact payment request");
+            }
+            return (int) value;
+        }
+
+
+        // A non-negative int, as PaymentRequest.Builder requires of days_per_billing_cycle and number_of_payments
+        int readCount() {
+            int value = readVarInt();
+            if (value < 0) {
+                throw new IllegalArgumentException("Negative count in compact payment request");
+            }
+            return value;
+        }
+
+
+        String readAddress(int length) {
+            require(length);
+            String address = MoneroAddress.encode(bytes, pos, length);
+            pos += length;
+            return address;
+        }
+
+
+        String readString() {
+            // A 10-byte varint can come out negative, which must not reach the String constructor
+            long length = readVarLong();
+            if (length < 0) {
+                throw new IllegalArgumentException("Invalid string length in compact payment request");
+            }
+            if (length > end - pos) {
+                throw new IllegalArgumentException("Truncated compact payment request");
+            }
+            String string = new String(bytes, pos, (int) length, StandardCharsets.UTF_8);
+            pos += (int) length;
+            return string;
+        }
+
+
+        private void require(int count) {
+            if (end - pos < count) {
+                throw new IllegalArgumentException("Truncated compact payment request");
+            }
+        }
+
+
+    }
+
+
+}
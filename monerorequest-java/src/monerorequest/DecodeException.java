@@ -0,0 +1,47 @@
+package monerorequest;
+
+
+/**
+ * Thrown when decoding stops early because the input exceeded one of its DecodeLimits.
+ * An IllegalArgumentException, so callers that already reject bad input keep working.
+ */
+final class DecodeException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    private final Reason reason;
+    private final int limit;
+
+
+    DecodeException(Reason reason, int limit) {
+        super(reason.description + " (limit " + limit + ")");
+        this.reason = reason;
+        this.limit = limit;
+    }
+
+
+    public Reason reason() {
+        return reason;
+    }
+
+
+    // The limit that was exceeded
+    public int limit() {
+        return limit;
+    }
+
+
+    enum Reason {
+        INPUT_TOO_LONG("Payment request string is too long"),
+        OUTPUT_TOO_LARGE("Payment request decompresses to too many bytes"),
+        TOO_MANY_FIELDS("Payment request has too many fields");
+
+        private final String description;
+
+
+        Reason(String description) {
+            this.description = description;
+        }
+    }
+
+
+}
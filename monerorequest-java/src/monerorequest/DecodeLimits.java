@@ -0,0 +1,61 @@
+package monerorequest;
+
+
+/**
+ * Caps on the work a single decode may do, so hostile input costs bounded, predictable memory.
+ * Decoding stops as soon as a cap is exceeded and throws a DecodeException naming it.
+ */
+final class DecodeLimits {
+    // Far above any real payment request (a typical one is a few hundred characters)
+    public static final DecodeLimits DEFAULT = new DecodeLimits(64 * 1024, 256 * 1024, 64);
+
+    private final int maxInputLength;
+    private final int maxOutputLength;
+    private final int maxFields;
+
+
+    // maxInputLength counts characters of the whole "monero-request:..." string, maxOutputLength inflated JSON bytes
+    // and maxFields the fields of the JSON object (including unknown ones that are skipped)
+    DecodeLimits(int maxInputLength, int maxOutputLength, int maxFields) {
+        if (maxInputLength <= 0 || maxOutputLength <= 0 || maxFields <= 0) {
+            throw new IllegalArgumentException("Decode limits must be positive");
+        }
+        if (maxOutputLength == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("maxOutputLength must be less than " + Integer.MAX_VALUE);
+        }
+        this.maxInputLength = maxInputLength;
+        this.maxOutputLength = maxOutputLength;
+        this.maxFields = maxFields;
+    }
+
+
+    public int maxInputLength() {
+        return maxInputLength;
+    }
+
+
+    public int maxOutputLength() {
+        return maxOutputLength;
+    }
+
+
+    public int maxFields() {
+        return maxFields;
+    }
+
+
+    // Rejects input before any of it is decoded
+    void checkInputLength(int length) {
+        if (length > maxInputLength) {
+            throw new DecodeException(DecodeException.Reason.INPUT_TOO_LONG, maxInputLength);
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return "DecodeLimits[maxInputLength=" + maxInputLength + ", maxOutputLength=" + maxOutputLength + ", maxFields=" + maxFields + "]";
+    }
+
+
+}
@@ -0,0 +1,463 @@
+package monerorequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+
+/**
+ * Reusable gzip + Base64 codec state (Deflater, Inflater, CRC and scratch buffers), handed out from a small bounded pool.
+ */
+final class GzipCodec {
+    // Header written by java.util.zip.GZIPOutputStream: magic, CM=deflate, no flags, no mtime, XFL=0, OS=unknown
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int TRAILER_SIZE = 8;
+    // Decoded bytes fed to the inflater at a time (a whole number of Base64 quanta)
+    private static final int CHUNK_SIZE = 768;
+    // Buffers larger than this (grown by an unusually large request) are dropped when the codec goes back to the pool
+    private static final int RETAINED_CAPACITY = 64 * 1024;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Header flag bits
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private static final byte[] BASE64_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+            .getBytes(StandardCharsets.ISO_8859_1);
+
+    // Works with any kind of thread: codecs are borrowed per call rather than pinned to a thread
+    private static final AtomicReferenceArray<GzipCodec> POOL =
+            new AtomicReferenceArray<>(Runtime.getRuntime().availableProcessors() * 2);
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final Inflater inflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+    private final JsonTokenizer tokenizer = new JsonTokenizer();
+    private final Base64Source source = new Base64Source();
+    private byte[] input = new byte[INITIAL_CAPACITY];
+    private byte[] output = new byte[INITIAL_CAPACITY];
+    private byte[] text = new byte[INITIAL_CAPACITY];
+    private int chunkPos;
+    private int chunkLength;
+    private int inflated;
+    private int maxInflated;
+    private boolean inflateFinished;
+
+
+    private GzipCodec() {
+    }
+
+
+    public static GzipCodec acquire() {
+        int size = POOL.length();
+        int start = (int) (Thread.currentThread().getId() % size);
+        for (int i = 0; i < size; i++) {
+            GzipCodec codec = POOL.getAndSet((start + i) % size, null);
+            if (codec != null) {
+                return codec;
+            }
+        }
+        return new GzipCodec();
+    }
+
+
+    // Returns the codec to the pool, or frees its native zlib memory if the pool is full
+    public void release() {
+        trim();
+        int size = POOL.length();
+        int start = (int) (Thread.currentThread().getId() % size);
+        for (int i = 0; i < size; i++) {
+            if (POOL.compareAndSet((start + i) % size, null, this)) {
+                return;
+            }
+        }
+        deflater.end();
+        inflater.end();
+    }
+
+
+    public Base64Source source() {
+        return source;
+    }
+
+
+    public JsonTokenizer tokenizer() {
+        return tokenizer;
+    }
+
+
+    // Scratch buffer holding the uncompressed bytes (or the current Base64-decoded chunk when decoding)
+    public byte[] input(int capacity) {
+        if (input.length < capacity) {
+            input = new byte[Math.max(capacity, input.length * 2)];
+        }
+        return input;
+    }
+
+
+    // Buffer holding the result of the last compress/decompress call
+    public byte[] output() {
+        return output;
+    }
+
+
+    // The output buffer, grown (keeping its contents) to at least capacity bytes
+    public byte[] output(int capacity) {
+        return ensureOutput(capacity);
+    }
+
+
+    // CRC32 of the bytes, computed with the codec's own CRC
+    public int crc32(byte[] data, int offset, int length) {
+        crc.update(data, offset, length);
+        int value = (int) crc.getValue();
+        crc.reset();
+        return value;
+    }
+
+
+    // Encodes the characters as UTF-8 into the input buffer, returning the number of bytes written
+    public int writeUtf8(CharSequence chars) {
+        return writeUtf8(chars, input(chars.length() * 3), 0);
+    }
+
+
+    // Encodes the characters as UTF-8 into bytes (which must have room for 3 per char) from offset on, returning the end offset
+    static int writeUtf8(CharSequence chars, byte[] bytes, int offset) {
+        int length = chars.length();
+        int n = offset;
+        for (int i = 0; i < length; i++) {
+            char c = chars.charAt(i);
+            if (c < 0x80) {
+                bytes[n++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[n++] = (byte) (0xC0 | (c >> 6));
+                bytes[n++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+                bytes[n++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[n++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[n++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                bytes[n++] = '?'; // Unpaired surrogate, replaced the same way String.getBytes does
+            } else {
+                bytes[n++] = (byte) (0xE0 | (c >> 12));
+                bytes[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[n++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return n;
+    }
+
+
+    // Gzips the bytes into the output buffer (same bytes GZIPOutputStream produces), returning the compressed length
+    public int compress(byte[] data, int offset, int length) {
+        System.arraycopy(HEADER, 0, ensureOutput(HEADER.length + length / 2 + 64), 0, HEADER.length);
+        int n = HEADER.length;
+
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+        while (!deflater.finished()) {
+            if (n == output.length) {
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+            n += deflater.deflate(output, n, output.length - n);
+        }
+        deflater.reset();
+
+        crc.update(data, offset, length);
+        ensureOutput(n + TRAILER_SIZE);
+        writeIntLE(output, n, (int) crc.getValue());
+        writeIntLE(output, n + 4, length);
+        crc.reset();
+
+        return n + TRAILER_SIZE;
+    }
+
+
+    // Raw-deflates the bytes against a preset dictionary into the output buffer from outputOffset on, returning the end offset
+    public int deflate(byte[] data, int offset, int length, byte[] dictionary, int outputOffset) {
+        ensureOutput(outputOffset + length + length / 2 + 64);
+        int n = outputOffset;
+
+        deflater.setDictionary(dictionary);
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+        while (!deflater.finished()) {
+            if (n == output.length) {
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+            n += deflater.deflate(output, n, output.length - n);
+        }
+        deflater.reset();
+        return n;
+    }
+
+
+    // Inflates raw deflate data made with the same preset dictionary into the output buffer, returning the inflated length.
+    // Like decompress, throws a DecodeException as soon as more than maxLength bytes inflate.
+    public int inflate(byte[] data, int offset, int length, byte[] dictionary, int maxLength) throws ZipException {
+        if (maxLength < 0 || maxLength == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("maxLength must be between 0 and " + (Integer.MAX_VALUE - 1));
+        }
+        int limit = maxLength + 1;
+        int n = 0;
+        try {
+            inflater.setDictionary(dictionary);
+            inflater.setInput(data, offset, length);
+            while (!inflater.finished() && n < limit) {
+                if (n == output.length) {
+                    output = Arrays.copyOf(output, Math.min(output.length * 2, limit));
+                }
+                int count = inflater.inflate(output, n, Math.min(output.length, limit) - n);
+                if (count == 0 && inflater.needsInput()) {
+                    throw new ZipException("Unexpected end of ZLIB input stream");
+                }
+                n += count;
+            }
+            if (n > maxLength) {
+                throw new DecodeException(DecodeException.Reason.OUTPUT_TOO_LARGE, maxLength);
+            }
+            if (inflater.getRemaining() != 0) {
+                throw new ZipException("Unexpected data after the deflate stream");
+            }
+            return n;
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage() != null ? e.getMessage() : "Invalid ZLIB data format");
+        } finally {
+            inflater.reset();
+        }
+    }
+
+
+    // Streams the Base64 text through the inflater into the output buffer, verifying the CRC and size trailer, returning the inflated length.
+    // Throws a DecodeException as soon as more than maxLength bytes inflate, so the buffer never grows past maxLength + 1.
+    public int decompress(Base64Source source, int maxLength) throws ZipException {
+        try {
+            beginInflate(source, maxLength);
+            int n = 0;
+            while (!inflateFinished()) {
+                n = inflateMore(source, Integer.MAX_VALUE);
+            }
+            return n;
+        } finally {
+            endInflate(source);
+        }
+    }
+
+
+    // Starts an incremental decompression: reads the gzip header and primes the inflater.
+    // Call inflateMore until it finishes or the caller has seen enough, then always endInflate.
+    public void beginInflate(Base64Source source, int maxLength) throws ZipException {
+        if (maxLength < 0 || maxLength == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("maxLength must be between 0 and " + (Integer.MAX_VALUE - 1));
+        }
+        input(CHUNK_SIZE);
+        chunkPos = 0;
+        chunkLength = 0;
+        inflated = 0;
+        maxInflated = maxLength;
+        inflateFinished = false;
+        readHeader(source);
+        inflater.setInput(input, chunkPos, chunkLength - chunkPos);
+    }
+
+
+    // Inflates up to maxBytes more into the output buffer, returning the total inflated so far.
+    // At the end of the stream the CRC and size trailer are verified and inflateFinished becomes true.
+    // One byte past the beginInflate maxLength is enough to know the stream is too large, so inflating stops there.
+    public int inflateMore(Base64Source source, int maxBytes) throws ZipException {
+        int n = inflated;
+        int limit = (int) Math.min((long) n + maxBytes, maxInflated + 1L);
+        try {
+            while (!inflater.finished() && n < limit) {
+                if (inflater.needsInput()) {
+                    if (!fill(source)) {
+                        throw new ZipException("Unexpected end of ZLIB input stream");
+                    }
+                    inflater.setInput(input, 0, chunkLength);
+                }
+                if (inflater.needsDictionary()) {
+                    throw new ZipException("Unexpected preset dictionary");
+                }
+                if (n == output.length) {
+                    output = Arrays.copyOf(output, (int) Math.min(output.length * 2L, maxInflated + 1L));
+                }
+                n += inflater.inflate(output, n, Math.min(output.length, limit) - n);
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage() != null ? e.getMessage() : "Invalid ZLIB data format");
+        }
+        inflated = n;
+        if (n > maxInflated) {
+            throw new DecodeException(DecodeException.Reason.OUTPUT_TOO_LARGE, maxInflated);
+        }
+
+        if (inflater.finished() && !inflateFinished) {
+            // Whatever the inflater did not consume is the start of the trailer
+            chunkPos = chunkLength - inflater.getRemaining();
+            int expectedCrc = readIntLE(source);
+            int expectedSize = readIntLE(source);
+            crc.update(output, 0, n);
+            if (expectedCrc != (int) crc.getValue() || expectedSize != n) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+            inflateFinished = true;
+        }
+        return n;
+    }
+
+
+    // True once the whole stream has been inflated and its trailer verified
+    public boolean inflateFinished() {
+        return inflateFinished;
+    }
+
+
+    // Ends an incremental decompression (finished or not), leaving the codec ready for the next one
+    public void endInflate(Base64Source source) {
+        inflater.reset();
+        crc.reset();
+        source.clear();
+    }
+
+
+    // Base64-encodes the first length bytes of the output buffer
+    public String outputToBase64(int length) {
+        return outputToBase64(length, true);
+    }
+
+
+    // Without padding the text ends after the last significant character (Base64Source reads both forms)
+    public String outputToBase64(int length, boolean padding) {
+        int encodedLength = 4 * ((length + 2) / 3);
+        if (text.length < encodedLength) {
+            text = new byte[Math.max(encodedLength, text.length * 2)];
+        }
+
+        int n = 0;
+        int i = 0;
+        for (; i + 3 <= length; i += 3) {
+            int bits = (output[i] & 0xFF) << 16 | (output[i + 1] & 0xFF) << 8 | (output[i + 2] & 0xFF);
+            text[n++] = BASE64_ALPHABET[bits >>> 18];
+            text[n++] = BASE64_ALPHABET[(bits >>> 12) & 0x3F];
+            text[n++] = BASE64_ALPHABET[(bits >>> 6) & 0x3F];
+            text[n++] = BASE64_ALPHABET[bits & 0x3F];
+        }
+        int remaining = length - i;
+        if (remaining > 0) {
+            int bits = (output[i] & 0xFF) << 16 | (remaining == 2 ? (output[i + 1] & 0xFF) << 8 : 0);
+            text[n++] = BASE64_ALPHABET[bits >>> 18];
+            text[n++] = BASE64_ALPHABET[(bits >>> 12) & 0x3F];
+            if (remaining == 2) {
+                text[n++] = BASE64_ALPHABET[(bits >>> 6) & 0x3F];
+            } else if (padding) {
+                text[n++] = '=';
+            }
+            if (padding) {
+                text[n++] = '=';
+            }
+        }
+        return new String(text, 0, n, StandardCharsets.ISO_8859_1);
+    }
+
+
+    // Validates the gzip header (same rules as GZIPInputStream), leaving the chunk positioned at the deflate data
+    private void readHeader(Base64Source source) throws ZipException {
+        if (nextByte(source) != 0x1f || nextByte(source) != 0x8b) {
+            throw new ZipException("Not in GZIP format");
+        }
+        if (nextByte(source) != Deflater.DEFLATED) {
+            throw new ZipException("Unsupported compression method");
+        }
+        int flags = nextByte(source);
+        skipBytes(source, 6); // mtime, XFL and OS
+
+        if ((flags & FEXTRA) != 0) {
+            skipBytes(source, nextByte(source) | nextByte(source) << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            while (nextByte(source) != 0) {
+                // Skip the file name
+            }
+        }
+        if ((flags & FCOMMENT) != 0) {
+            while (nextByte(source) != 0) {
+                // Skip the comment
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            skipBytes(source, 2);
+        }
+    }
+
+
+    // Refills the chunk with the next decoded bytes, returning false at the end of the text
+    private boolean fill(Base64Source source) {
+        chunkPos = 0;
+        chunkLength = source.read(input, 0, CHUNK_SIZE);
+        return chunkLength > 0;
+    }
+
+
+    private int nextByte(Base64Source source) throws ZipException {
+        if (chunkPos == chunkLength && !fill(source)) {
+            throw new ZipException("Unexpected end of GZIP input");
+        }
+        return input[chunkPos++] & 0xFF;
+    }
+
+
+    private void skipBytes(Base64Source source, int count) throws ZipException {
+        for (int i = 0; i < count; i++) {
+            nextByte(source);
+        }
+    }
+
+
+    private int readIntLE(Base64Source source) throws ZipException {
+        return nextByte(source) | nextByte(source) << 8 | nextByte(source) << 16 | nextByte(source) << 24;
+    }
+
+
+    // Drops oversized buffers so a pooled codec holds on to no more than a few small ones between calls
+    private void trim() {
+        if (input.length > RETAINED_CAPACITY) {
+            input = new byte[INITIAL_CAPACITY];
+        }
+        if (output.length > RETAINED_CAPACITY) {
+            output = new byte[INITIAL_CAPACITY];
+        }
+        if (text.length > RETAINED_CAPACITY) {
+            text = new byte[INITIAL_CAPACITY];
+        }
+        // The tokenizer may still point at the last output buffer
+        tokenizer.reset(output, 0, 0);
+    }
+
+
+    private byte[] ensureOutput(int capacity) {
+        if (output.length < capacity) {
+            output = Arrays.copyOf(output, Math.max(capacity, output.length * 2));
+        }
+        return output;
+    }
+
+
+    private static void writeIntLE(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> 8);
+        bytes[offset + 2] = (byte) (value >>> 16);
+        bytes[offset + 3] = (byte) (value >>> 24);
+    }
+
+
+}
@@ -0,0 +1,596 @@
+package monerorequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * Single-pass, pull-style JSON tokenizer that reads UTF-8 bytes directly, without building an intermediate String.
+ */
+final class JsonTokenizer {
+    // Powers of ten that are exactly representable as a double (used by the fast number path)
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private byte[] buf;
+    private int pos;
+    private int end;
+    private boolean firstField;
+    private int fields;
+    private int maxFields = Integer.MAX_VALUE;
+    private char[] chars = new char[64];
+
+
+    public JsonTokenizer reset(byte[] buf, int offset, int length) {
+        this.buf = buf;
+        this.pos = offset;
+        this.end = offset + length;
+        this.firstField = true;
+        this.fields = 0;
+        this.maxFields = Integer.MAX_VALUE;
+        return this;
+    }
+
+
+    // Makes nextField throw a DecodeException once the object has more than maxFields fields (reset lifts the limit)
+    public JsonTokenizer limitFields(int maxFields) {
+        this.maxFields = maxFields;
+        return this;
+    }
+
+
+    // Points the tokenizer at a longer copy of the same input (e.g. after more of it was inflated), keeping its place
+    public JsonTokenizer extend(byte[] buf, int offset, int length) {
+        this.buf = buf;
+        this.end = offset + length;
+        return this;
+    }
+
+
+    // True if a non-whitespace character is available (e.g. the opening brace)
+    public boolean hasToken() {
+        return skipWhitespace(pos) < end;
+    }
+
+
+    // True if the next field of the current object (name, colon and value), or its closing brace, is entirely
+    // within the input, so reading it can't run off the end. Malformed input counts as available, so reading reports it.
+    public boolean hasField() {
+        int p = skipWhitespace(pos);
+        if (p >= end) {
+            return false;
+        }
+        if (buf[p] == '}') {
+            return true;
+        }
+        if (!firstField) {
+            if (buf[p] != ',') {
+                return true;
+            }
+            p = skipWhitespace(p + 1);
+        }
+        p = scanValue(p);
+        if (p < 0) {
+            return false;
+        }
+        p = skipWhitespace(p);
+        if (p >= end) {
+            return false;
+        }
+        if (buf[p] != ':') {
+            return true;
+        }
+        return scanValue(skipWhitespace(p + 1)) >= 0;
+    }
+
+
+    // Reads a field name and its colon, returning the index of the matching candidate (UTF-8 bytes) or -1,
+    // without creating a String unless the name contains escapes
+    public int nextName(byte[][] candidates) {
+        skipWhitespace();
+        expect('"');
+        int start = pos;
+        int length = -1;
+        for (int i = start; i < end; i++) {
+            byte b = buf[i];
+            if (b == '"') {
+                length = i - start;
+                break;
+            }
+            if (b == '\\') {
+                break;
+            }
+        }
+
+        int match = -1;
+        if (length >= 0) {
+            pos = start + length + 1;
+            for (int i = 0; i < candidates.length && match < 0; i++) {
+                if (regionEquals(start, length, candidates[i])) {
+                    match = i;
+                }
+            }
+        } else {
+            byte[] name = readEscapedString(start).getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < candidates.length && match < 0; i++) {
+                if (Arrays.equals(name, candidates[i])) {
+                    match = i;
+                }
+            }
+        }
+        skipWhitespace();
+        expect(':');
+        return match;
+    }
+
+
+    // Consumes the opening brace of the top-level object
+    public void beginObject() {
+        skipWhitespace();
+        expect('{');
+        firstField = true;
+    }
+
+
+    // Moves to the next field of the current object, returning false once the closing brace is consumed
+    public boolean nextField() {
+        skipWhitespace();
+        int c = peek();
+        if (c == '}') {
+            pos++;
+            return false;
+        }
+        if (++fields > maxFields) {
+            throw new DecodeException(DecodeException.Reason.TOO_MANY_FIELDS, maxFields);
+        }
+        if (firstField) {
+            firstField = false;
+            return true;
+        }
+        expect(',');
+        return true;
+    }
+
+
+    // Reads a field name and the colon that follows it
+    public String nextName() {
+        String name = nextString();
+        skipWhitespace();
+        expect(':');
+        return name;
+    }
+
+
+    // Returns the first character of the next value without consuming it
+    public char peekToken() {
+        skipWhitespace();
+        return (char) peek();
+    }
+
+
+    // Reads a scalar value: String, Double, Boolean or null
+    public Object nextValue() {
+        skipWhitespace();
+        int c = peek();
+        switch (c) {
+            case '"':
+                return nextString();
+            case 't':
+                expectLiteral("true");
+                return Boolean.TRUE;
+            case 'f':
+                expectLiteral("false");
+                return Boolean.FALSE;
+            case 'n':
+                expectLiteral("null");
+                return null;
+            case '{':
+            case '[':
+                throw error("Nested JSON values are not supported");
+            default:
+                return nextDouble();
+        }
+    }
+
+
+    public String nextString() {
+        skipWhitespace();
+        expect('"');
+        int start = pos;
+        boolean ascii = true;
+
+        // Fast path: no escapes, so the bytes can be handed straight to the String constructor. Multi-byte
+        // sequences are still checked here, so malformed UTF-8 is rejected the same way as on the escape path
+        // rather than being replaced with U+FFFD
+        for (int i = start; i < end; i++) {
+            byte b = buf[i];
+            if (b == '"') {
+                pos = i + 1;
+                return new String(buf, start, i - start, ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+            }
+            if (b == '\\') {
+                break;
+            }
+            if (b < 0) {
+                ascii = false;
+                pos = i + 1;
+                readUtf8(b);
+                i = pos - 1;
+            } else if (b < 0x20) {
+                throw error("Unescaped control character in string");
+            }
+        }
+
+        return readEscapedString(start);
+    }
+
+
+    public double nextDouble() {
+        skipWhitespace();
+        int start = pos;
+        boolean negative = false;
+        if (pos < end && buf[pos] == '-') {
+            negative = true;
+            pos++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean exact = true;
+
+        int intStart = pos;
+        while (pos < end && isDigit(buf[pos])) {
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (buf[pos] - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+            } else {
+                exact = false;
+            }
+            pos++;
+        }
+        if (pos == intStart) {
+            throw error("Invalid number");
+        }
+
+        if (pos < end && buf[pos] == '.') {
+            pos++;
+            int fracStart = pos;
+            while (pos < end && isDigit(buf[pos])) {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (buf[pos] - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    scale++;
+                } else {
+                    exact = false;
+                }
+                pos++;
+            }
+            if (pos == fracStart) {
+                throw error("Invalid number");
+            }
+        }
+
+        if (pos < end && (buf[pos] == 'e' || buf[pos] == 'E')) {
+            pos++;
+            if (pos < end && (buf[pos] == '+' || buf[pos] == '-')) {
+                pos++;
+            }
+            int expStart = pos;
+            while (pos < end && isDigit(buf[pos])) {
+                pos++;
+            }
+            if (pos == expStart) {
+                throw error("Invalid number");
+            }
+            exact = false;
+        }
+
+        // Both operands are exact doubles, so a single division is correctly rounded
+        if (exact && mantissa < MAX_EXACT_MANTISSA && scale < POWERS_OF_TEN.length) {
+            double value = scale == 0 ? (double) mantissa : mantissa / POWERS_OF_TEN[scale];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(new String(buf, start, pos - start, StandardCharsets.ISO_8859_1));
+    }
+
+
+    // Skips over any value, including nested objects and arrays, without materializing it
+    public void skipValue() {
+        skipWhitespace();
+        int c = peek();
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') {
+            int depth = 0;
+            while (true) {
+                skipWhitespace();
+                c = peek();
+                if (c == '"') {
+                    skipString();
+                    continue;
+                }
+                pos++;
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    if (--depth == 0) {
+                        return;
+                    }
+                }
+            }
+        } else if (c == 't') {
+            expectLiteral("true");
+        } else if (c == 'f') {
+            expectLiteral("false");
+        } else if (c == 'n') {
+            expectLiteral("null");
+        } else {
+            nextDouble();
+        }
+    }
+
+
+    // Makes sure nothing but whitespace follows the top-level value
+    public void endDocument() {
+        skipWhitespace();
+        if (pos != end) {
+            throw error("Unexpected trailing characters");
+        }
+    }
+
+
+    private String readEscapedString(int start) {
+        int length = 0;
+        pos = start;
+
+        while (true) {
+            if (pos >= end) {
+                throw error("Unterminated string");
+            }
+            int b = buf[pos++];
+
+            if (b == '"') {
+                return new String(chars, 0, length);
+            }
+            if (length + 2 > chars.length) {
+                char[] grown = new char[chars.length * 2];
+                System.arraycopy(chars, 0, grown, 0, length);
+                chars = grown;
+            }
+
+            if (b == '\\') {
+                chars[length++] = readEscape();
+            } else if (b >= 0x20) {
+                chars[length++] = (char) b;
+            } else if (b >= 0) {
+                throw error("Unescaped control character in string");
+            } else {
+                int codePoint = readUtf8(b);
+                if (codePoint >= 0x10000) {
+                    chars[length++] = Character.highSurrogate(codePoint);
+                    chars[length++] = Character.lowSurrogate(codePoint);
+                } else {
+                    chars[length++] = (char) codePoint;
+                }
+            }
+        }
+    }
+
+
+    private char readEscape() {
+        if (pos >= end) {
+            throw error("Unterminated escape sequence");
+        }
+        byte b = buf[pos++];
+        switch (b) {
+            case '"': return '"';
+            case '\\': return '\\';
+            case '/': return '/';
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case 'u':
+                if (pos + 4 > end) {
+                    throw error("Truncated unicode escape");
+                }
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(buf[pos++], 16);
+                    if (digit < 0) {
+                        throw error("Invalid unicode escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            default:
+                throw error("Invalid escape sequence");
+        }
+    }
+
+
+    // Decodes the rest of a multi-byte UTF-8 sequence whose lead byte has already been consumed. Overlong forms,
+    // surrogates and code points past U+10FFFF are rejected, as they are by a strict UTF-8 decoder
+    private int readUtf8(int lead) {
+        int codePoint;
+        int continuation;
+        int min;
+        if ((lead & 0xE0) == 0xC0) {
+            codePoint = lead & 0x1F;
+            continuation = 1;
+            min = 0x80;
+        } else if ((lead & 0xF0) == 0xE0) {
+            codePoint = lead & 0x0F;
+            continuation = 2;
+            min = 0x800;
+        } else if ((lead & 0xF8) == 0xF0) {
+            codePoint = lead & 0x07;
+            continuation = 3;
+            min = 0x10000;
+        } else {
+            throw error("Invalid UTF-8 sequence");
+        }
+
+        if (pos + continuation > end) {
+            throw error("Truncated UTF-8 sequence");
+        }
+        for (int i = 0; i < continuation; i++) {
+            int b = buf[pos++];
+            if ((b & 0xC0) != 0x80) {
+                throw error("Invalid UTF-8 sequence");
+            }
+            codePoint = (codePoint << 6) | (b & 0x3F);
+        }
+        if (codePoint < min || codePoint > Character.MAX_CODE_POINT
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            throw error("Invalid UTF-8 sequence");
+        }
+        return codePoint;
+    }
+
+
+    private void skipString() {
+        expect('"');
+        while (pos < end) {
+            byte b = buf[pos++];
+            if (b == '"') {
+                return;
+            }
+            if (b == '\\') {
+                pos++;
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+
+    private boolean regionEquals(int start, int length, byte[] candidate) {
+        if (candidate.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buf[start + i] != candidate[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    // End of the value starting at p, or -1 if it may continue past the end of the input
+    private int scanValue(int p) {
+        if (p >= end) {
+            return -1;
+        }
+        byte b = buf[p];
+        if (b == '"') {
+            return scanString(p);
+        }
+        if (b == '{' || b == '[') {
+            int depth = 0;
+            while (p < end) {
+                b = buf[p];
+                if (b == '"') {
+                    p = scanString(p);
+                    if (p < 0) {
+                        return -1;
+                    }
+                    continue;
+                }
+                p++;
+                if (b == '{' || b == '[') {
+                    depth++;
+                } else if ((b == '}' || b == ']') && --depth == 0) {
+                    return p;
+                }
+            }
+            return -1;
+        }
+        // A number or literal only ends at a delimiter, which must be in the input too
+        while (p < end) {
+            b = buf[p];
+            if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                return p;
+            }
+            p++;
+        }
+        return -1;
+    }
+
+
+    private int scanString(int p) {
+        for (p++; p < end; p++) {
+            byte b = buf[p];
+            if (b == '\\') {
+                p++;
+            } else if (b == '"') {
+                return p + 1;
+            }
+        }
+        return -1;
+    }
+
+
+    private int skipWhitespace(int p) {
+        while (p < end) {
+            byte b = buf[p];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return p;
+            }
+            p++;
+        }
+        return p;
+    }
+
+
+    private void skipWhitespace() {
+        pos = skipWhitespace(pos);
+    }
+
+
+    private int peek() {
+        if (pos >= end) {
+            throw error("Unexpected end of input");
+        }
+        return buf[pos];
+    }
+
+
+    private void expect(char c) {
+        if (pos >= end || buf[pos] != c) {
+            throw error("Expected '" + c + "'");
+        }
+        pos++;
+    }
+
+
+    private void expectLiteral(String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            if (pos >= end || buf[pos] != literal.charAt(i)) {
+                throw error("Invalid literal");
+            }
+            pos++;
+        }
+    }
+
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at offset " + pos);
+    }
+
+
+}
@@ -1,25 +1,14 @@
 package monerorequest;
 
-import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.text.ParseException;
-import java.util.ArrayList;
 import java.util.List;
-import java.text.SimpleDateFormat;
 import java.net.URL;
 import java.net.URI;
-import java.util.Random;
 import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.ZoneId;
-import java.io.ByteArrayInputStream;
-import java.util.Base64;
-import java.util.zip.GZIPInputStream;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.regex.Pattern;
-import java.util.zip.GZIPOutputStream;
 
 
 /**
@@ -28,34 +17,28 @@ import java.util.zip.GZIPOutputStream;
 class JsonUtils {
     // Parses a JSON string into a Map
     public static Map<String, Object> parseJson(String jsonStr) {
+        byte[] jsonBytes = jsonStr.getBytes(StandardCharsets.UTF_8);
+        return parseJson(jsonBytes, 0, jsonBytes.length);
+    }
+
+
+    // Parses UTF-8 encoded JSON bytes into a Map in a single pass (numbers are represented as Double)
+    public static Map<String, Object> parseJson(byte[] jsonBytes, int offset, int length) {
+        return parseJson(jsonBytes, offset, length, Integer.MAX_VALUE);
+    }
+
+
+    // Same, but throws a DecodeException as soon as the object has more than maxFields fields
+    public static Map<String, Object> parseJson(byte[] jsonBytes, int offset, int length, int maxFields) {
         Map<String, Object> result = new HashMap<>();
-        String jsonContent = jsonStr.trim().substring(1, jsonStr.length() - 1).trim(); // Remove surrounding braces
-        String[] keyValuePairs = jsonContent.split(",");
-
-        Pattern numberPattern = Pattern.compile("-?\\d+(\\.\\d+)?");
-
-        for (String pair : keyValuePairs) {
-            String[] parts = pair.split(":", 2);
-            String key = parts[0].trim().replace("\"", "");
-            String value = parts[1].trim();
-            Object processedValue;
-
-            if ("null".equalsIgnoreCase(value)) {
-                processedValue = null;
-            } else if ("true".equalsIgnoreCase(value)) {
-                processedValue = Boolean.TRUE;
-            } else if ("false".equalsIgnoreCase(value)) {
-                processedValue = Boolean.FALSE;
-            } else if (numberPattern.matcher(value).matches()) {
-                processedValue = Double.parseDouble(value); // Use Double for number representation
-            } else if (value.startsWith("\"") && value.endsWith("\"")) {
-                processedValue = value.substring(1, value.length() - 1);
-            } else {
-                processedValue = value;
-            }
+        JsonTokenizer tokenizer = new JsonTokenizer().reset(jsonBytes, offset, length).limitFields(maxFields);
 
-            result.put(key, processedValue);
+        tokenizer.beginObject();
+        while (tokenizer.nextField()) {
+            String key = tokenizer.nextName();
+            result.put(key, tokenizer.nextValue());
         }
+        tokenizer.endDocument();
 
         return result;
     }
@@ -87,6 +70,26 @@ class JsonUtils {
     }
 
 
+    // Writes a PaymentRequest as JSON, using the same key order the Map-based encoder has always produced
+    public static String paymentRequestToJson(PaymentRequest request) {
+        StringBuilder jsonBuilder = new StringBuilder(512);
+        jsonBuilder.append("{\"sellers_wallet\":\"").append(escapeString(request.sellersWallet()))
+                .append("\",\"change_indicator_url\":\"").append(escapeString(request.changeIndicatorUrl()))
+                .append("\",\"amount\":\"").append(escapeString(request.amount()))
+                .append("\",\"number_of_payments\":").append(request.numberOfPayments())
+                .append(",\"payment_id\":\"").append(request.paymentIdHex())
+                .append("\",\"custom_label\":\"").append(escapeString(request.customLabel()))
+                .append("\",\"currency\":\"").append(escapeString(request.currency()))
+                .append("\",\"days_per_billing_cycle\":").append(request.daysPerBillingCycle())
+                .append(",\"start_date\":\"");
+        if (request.startDate() != PaymentRequest.NO_START_DATE) {
+            Rfc3339.appendTo(jsonBuilder, request.startDate());
+        }
+        jsonBuilder.append("\"}");
+        return jsonBuilder.toString();
+    }
+
+
     // Escapes special characters in a JSON string
     private static String escapeString(String str) {
         return str.replace("\\", "\\\\")
@@ -131,6 +134,11 @@ KMMMMMMMMMMMMMWNNNNNNNNNNNO                         oNNNNNNNNNNNNMMMMMMMMMMMMO""
     }
 
 
+    public static PaymentRequest readRequest(String moneroPaymentRequest) {
+        return Decode.paymentRequest(moneroPaymentRequest);
+    }
+
+
     public static String create(String customLabel,
                                 String sellersWallet,
                                 String currency,
@@ -145,9 +153,10 @@ KMMMMMMMMMMMMMWNNNNNNNNNNNO                         oNNNNNNNNNNNNMMMMMMMMMMMMO""
         // Defaults To Use
         String version = "1"; // Can disable this and set "version" as an argument above if you want.
         String finalPaymentId = paymentId != null && !paymentId.isEmpty() ? paymentId : makeRandomPaymentId();
-        String finalStartDate = startDate != null && !startDate.isEmpty() ? startDate : convertToTruncatedRFC3339(ZonedDateTime.now());
+        String finalStartDate = startDate != null && !startDate.isEmpty() ? startDate : Rfc3339.format(System.currentTimeMillis());
 
         // Make sure all arguments are valid
+        long validateStart = Metrics.start();
         if (!Check.name(customLabel)) {throw new IllegalArgumentException("customLabel is not a string.");}
 
         boolean allowStandard = true;
@@ -161,45 +170,50 @@ KMMMMMMMMMMMMMWNNNNNNNNNNNO                         oNNNNNNNNNNNNMMMMMMMMMMMMO""
         if (!Check.daysPerBillingCycle(daysPerBillingCycle)) {throw new IllegalArgumentException("billingCycle is not an integer, or the value set was lower than 0.");}
         if (!Check.numberOfPayments(numberOfPayments)) {throw new IllegalArgumentException("numberOfPayments is not an integer, or is less than 1.");}
         if (!Check.changeIndicatorUrl(changeIndicatorUrl)) {throw new IllegalArgumentException("changeIndicatorUrl is not a string, or is not a valid URL.");}
+        Metrics.stop(Metrics.Stage.VALIDATE, validateStart);
 
-        Map<String, Object> jsonData = new HashMap<>();
-        jsonData.put("custom_label", customLabel);
-        jsonData.put("sellers_wallet", sellersWallet);
-        jsonData.put("currency", currency);
-        jsonData.put("amount", amount);
-        jsonData.put("payment_id", finalPaymentId);
-        jsonData.put("start_date", finalStartDate);
-        jsonData.put("days_per_billing_cycle", daysPerBillingCycle);
-        jsonData.put("number_of_payments", numberOfPayments);
-        jsonData.put("change_indicator_url", changeIndicatorUrl);
+        PaymentRequest request = new PaymentRequest(
+                customLabel,
+                sellersWallet,
+                currency,
+                amount,
+                PaymentRequest.parsePaymentId(finalPaymentId),
+                PaymentRequest.parseStartDate(finalStartDate),
+                daysPerBillingCycle,
+                numberOfPayments,
+                changeIndicatorUrl
+        );
 
         // process data to create code
-        return Encode.moneroPaymentRequestFromJson(jsonData, version);
+        return Encode.paymentRequest(request, version);
     }
 
 
-    public static String makeRandomPaymentId() {
-        StringBuilder paymentId = new StringBuilder();
-        Random random = new Random();
-        String hexChars = "0123456789abcdef";
+    public static String create(PaymentRequest request) throws IOException {
+        return Encode.paymentRequest(request, "1");
+    }
 
-        for (int i = 0; i < 16; i++) {
-            int randomIndex = random.nextInt(hexChars.length());
-            paymentId.append(hexChars.charAt(randomIndex));
-        }
-        return paymentId.toString();
+
+    // Version "2" opts in to the compact encoding, which older readers can't decode
+    public static String create(PaymentRequest request, String version) throws IOException {
+        return Encode.paymentRequest(request, version);
     }
 
 
-    public static String convertToTruncatedRFC3339(ZonedDateTime zonedDateTime) {
-        // Convert the input datetime to UTC
-        ZonedDateTime utcDateTime = zonedDateTime.withZoneSameInstant(ZoneId.of("UTC"));
+    // Encodes many requests in parallel, reporting per-item errors instead of failing the whole batch
+    public static BatchEncoder.Result createAll(List<PaymentRequest.Builder> specs) {
+        return BatchEncoder.encode(specs);
+    }
 
-        // Define the formatter
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
 
-        // Format the datetime object to a string
-        return utcDateTime.format(formatter);
+    public static String makeRandomPaymentId() {
+        return PaymentIdGenerator.defaultGenerator().nextHex();
+    }
+
+
+    public static String convertToTruncatedRFC3339(ZonedDateTime zonedDateTime) {
+        // Formats the instant in UTC, truncated to milliseconds
+        return Rfc3339.format(zonedDateTime.toInstant().toEpochMilli());
     }
 
 
@@ -211,10 +225,13 @@ KMMMMMMMMMMMMMWNNNNNNNNNNNO                         oNNNNNNNNNNNNMMMMMMMMMMMMO""
  */
 class Encode {
     public static String moneroPaymentRequestFromJson(Map<String, Object> jsonData, String version) throws IOException {
+        Metrics.EncodeEvent event = Metrics.beginEncode();
         String encodedStr = "";
 
         if (version.equals("1")) {
             encodedStr = Encode.v1MoneroPaymentRequest(jsonData);
+        } else if (version.equals("2")) {
+            encodedStr = Encode.v2MoneroPaymentRequest(jsonData);
         }
 
         // Add the Monero Payment Request identifier & version number
@@ -223,24 +240,100 @@ class Encode {
         if (encodedStr.isEmpty()) {
             throw new IllegalArgumentException("Invalid input");
         }
-        return moneroPaymentRequest;
+        return Metrics.endEncode(event, version, moneroPaymentRequest);
+    }
+
+
+    public static String paymentRequest(PaymentRequest request, String version) throws IOException {
+        GzipCodec codec = GzipCodec.acquire();
+        try {
+            return paymentRequest(request, version, codec);
+        } finally {
+            codec.release();
+        }
+    }
+
+
+    // Encodes with a codec the caller already holds, so batch encoding skips the pool round trip per item
+    static String paymentRequest(PaymentRequest request, String version, GzipCodec codec) {
+        Metrics.EncodeEvent event = Metrics.beginEncode();
+        if (version.equals("1")) {
+            return Metrics.endEncode(event, version, "monero-request:" + version + ":" + Encode.v1PaymentRequest(request, codec));
+        }
+        if (version.equals("2")) {
+            return Metrics.endEncode(event, version, "monero-request:" + version + ":" + CompactFormat.encode(request, codec));
+        }
+        throw new IllegalArgumentException("Invalid input");
     }
 
 
+
     // VERSIONS ////////////////////////////////////////////////////////////////////////////////////////////////////////
     public static String v1MoneroPaymentRequest(Map<String, Object> jsonData) throws IOException {
         // Convert the JSON data to a string
+        long jsonStart = Metrics.start();
         String jsonStr = JsonUtils.mapToJson(jsonData);
-        // Compress the string using gzip compression
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(byteArrayOutputStream)) {
-            gzipOutputStream.write(jsonStr.getBytes(StandardCharsets.UTF_8));
-        } // The try-with-resources statement ensures that the GZIPOutputStream is closed automatically
+        Metrics.stop(Metrics.Stage.JSON_WRITE, jsonStart);
+        return compressToBase64(jsonStr);
+    }
+
+
+    public static String v1PaymentRequest(PaymentRequest request) throws IOException {
+        // Write the fields straight to JSON, without going through a Map
+        long jsonStart = Metrics.start();
+        String jsonStr = JsonUtils.paymentRequestToJson(request);
+        Metrics.stop(Metrics.Stage.JSON_WRITE, jsonStart);
+        return compressToBase64(jsonStr);
+    }
+
+
+    static String v1PaymentRequest(PaymentRequest request, GzipCodec codec) {
+        long jsonStart = Metrics.start();
+        String jsonStr = JsonUtils.paymentRequestToJson(request);
+        Metrics.stop(Metrics.Stage.JSON_WRITE, jsonStart);
+        return compressToBase64(jsonStr, codec);
+    }
+
+
+    // Version 2 carries only the payment request fields, in a fixed order (see CompactFormat)
+    public static String v2MoneroPaymentRequest(Map<String, Object> jsonData) {
+        return v2PaymentRequest(CompactFormat.fromMap(jsonData));
+    }
+
+
+    public static String v2PaymentRequest(PaymentRequest request) {
+        GzipCodec codec = GzipCodec.acquire();
+        try {
+            return CompactFormat.encode(request, codec);
+        } finally {
+            codec.release();
+        }
+    }
+
+
+    private static String compressToBase64(String jsonStr) {
+        // Compress the string using gzip compression, with pooled Deflater and buffers
+        GzipCodec codec = GzipCodec.acquire();
+        try {
+            return compressToBase64(jsonStr, codec);
+        } finally {
+            codec.release();
+        }
+    }
+
 
-        // Convert the compressed byte array to a Base64-encoded string
-        String encodedStr = Base64.getEncoder().encodeToString(byteArrayOutputStream.toByteArray());
+    private static String compressToBase64(String jsonStr, GzipCodec codec) {
+        long compressStart = Metrics.start();
+        int length = codec.writeUtf8(jsonStr);
+        int compressedLength = codec.compress(codec.input(length), 0, length);
+        Metrics.stop(Metrics.Stage.COMPRESS, compressStart);
+        Metrics.encoded(length, compressedLength);
 
-        return encodedStr;
+        // Convert the compressed bytes to a Base64-encoded string
+        long base64Start = Metrics.start();
+        String encoded = codec.outputToBase64(compressedLength);
+        Metrics.stop(Metrics.Stage.BASE64_ENCODE, base64Start);
+        return encoded;
     }
 
 
@@ -251,62 +344,399 @@ class Encode {
  * Handles decoding of Monero Payment Request strings into data structures.
  */
 class Decode {
+    private static final String PREFIX = "monero-request:";
+    // Bytes inflated at a time when decoding a projection
+    private static final int PROJECTION_STEP = 128;
+
+
     public static Map<String, Object> moneroPaymentRequest(String moneroPaymentRequest) {
-        // Extract prefix, version, and Base64-encoded data
-        String[] parts = moneroPaymentRequest.split(":");
-        if (parts.length != 3){
-            throw new IllegalArgumentException("Invalid input format");
+        return moneroPaymentRequest(moneroPaymentRequest, DecodeLimits.DEFAULT);
+    }
+
+
+    // Throws a DecodeException as soon as the request exceeds one of the limits
+    public static Map<String, Object> moneroPaymentRequest(String moneroPaymentRequest, DecodeLimits limits) {
+        GzipCodec codec = GzipCodec.acquire();
+        try {
+            Metrics.DecodeEvent event = Metrics.beginDecode();
+            // Check the prefix and version in place; the source is left at the Base64-encoded data
+            Base64Source source = codec.source().reset(moneroPaymentRequest, 0, moneroPaymentRequest.length());
+            int version = 0;
+            boolean succeeded = false;
+            try {
+                limits.checkInputLength(moneroPaymentRequest.length());
+                version = readVersion(source);
+
+                if (version == 1) {
+                    Map<String, Object> moneroPaymentRequestData = Decode.v1MoneroPaymentRequest(codec, source, limits);
+                    succeeded = true;
+                    return moneroPaymentRequestData;
+                } else if (version == 2) {
+                    Map<String, Object> moneroPaymentRequestData = Decode.v2PaymentRequest(codec, source, limits).toMap();
+                    succeeded = true;
+                    return moneroPaymentRequestData;
+                } else {
+                    throw new IllegalArgumentException("Invalid input");
+                }
+            } finally {
+                Metrics.endDecode(event, version, moneroPaymentRequest.length(), succeeded);
+            }
+        } finally {
+            codec.release();
         }
+    }
 
-        String prefix = parts[0];
-        String version = parts[1];
-        String encodedStr = parts[2];
 
-        if (version.equals("1")) {
-            Map<String, Object> moneroPaymentRequestData = Decode.v1MoneroPaymentRequest(encodedStr);
-            return moneroPaymentRequestData;
-        } else {
-            throw new IllegalArgumentException("Invalid input");
+    public static PaymentRequest paymentRequest(CharSequence moneroPaymentRequest) {
+        return paymentRequest(moneroPaymentRequest, DecodeLimits.DEFAULT);
+    }
+
+
+    public static PaymentRequest paymentRequest(CharSequence moneroPaymentRequest, DecodeLimits limits) {
+        GzipCodec codec = GzipCodec.acquire();
+        try {
+            return paymentRequest(codec, codec.source().reset(moneroPaymentRequest, 0, moneroPaymentRequest.length()), limits);
+        } finally {
+            codec.release();
+        }
+    }
+
+
+    // Decodes the ASCII bytes between the buffer's position and limit, without changing either
+    public static PaymentRequest paymentRequest(ByteBuffer moneroPaymentRequest) {
+        return paymentRequest(moneroPaymentRequest, moneroPaymentRequest.position(), moneroPaymentRequest.limit());
+    }
+
+
+    // Decodes the ASCII bytes between two absolute indexes of the buffer (e.g. one line of a mapped file)
+    public static PaymentRequest paymentRequest(ByteBuffer buffer, int start, int end) {
+        return paymentRequest(buffer, start, end, DecodeLimits.DEFAULT);
+    }
+
+
+    public static PaymentRequest paymentRequest(ByteBuffer buffer, int start, int end, DecodeLimits limits) {
+        GzipCodec codec = GzipCodec.acquire();
+        try {
+            return paymentRequest(codec, codec.source().reset(buffer, start, end), limits);
+        } finally {
+            codec.release();
+        }
+    }
+
+
+    private static PaymentRequest paymentRequest(GzipCodec codec, Base64Source source, DecodeLimits limits) {
+        Metrics.DecodeEvent event = Metrics.beginDecode();
+        int encodedLength = source.end() - source.position();
+        int version = 0;
+        boolean succeeded = false;
+        try {
+            limits.checkInputLength(encodedLength);
+            version = readVersion(source);
+
+            if (version == 1) {
+                PaymentRequest request = Decode.v1PaymentRequest(codec, source, limits);
+                succeeded = true;
+                return request;
+            } else if (version == 2) {
+                PaymentRequest request = Decode.v2PaymentRequest(codec, source, limits);
+                succeeded = true;
+                return request;
+            } else {
+                throw new IllegalArgumentException("Invalid input");
+            }
+        } finally {
+            Metrics.endDecode(event, version, encodedLength, succeeded);
+        }
+    }
+
+
+
+    // Decodes only the projected fields into the result (cleared first, so it can be reused), stopping as soon as
+    // every projected field has been read. The gzip CRC is only checked when the whole payload had to be inflated.
+    public static Projection.Result project(CharSequence moneroPaymentRequest, Projection projection, Projection.Result result) {
+        return project(moneroPaymentRequest, projection, result, DecodeLimits.DEFAULT);
+    }
+
+
+    public static Projection.Result project(CharSequence moneroPaymentRequest, Projection projection, Projection.Result result,
+                                           DecodeLimits limits) {
+        GzipCodec codec = GzipCodec.acquire();
+        try {
+            Metrics.DecodeEvent event = Metrics.beginDecode();
+            Base64Source source = codec.source().reset(moneroPaymentRequest, 0, moneroPaymentRequest.length());
+            int version = 0;
+            boolean succeeded = false;
+            try {
+                limits.checkInputLength(moneroPaymentRequest.length());
+                version = readVersion(source);
+
+                if (version == 1) {
+                    v1Project(codec, source, projection, result, limits);
+                    succeeded = true;
+                    return result;
+                } else if (version == 2) {
+                    // Tiny and fixed-order, so decoding all of it costs less than any skipping would save
+                    result.clear();
+                    result.read(projection, Decode.v2PaymentRequest(codec, source, limits));
+                    succeeded = true;
+                    return result;
+                } else {
+                    throw new IllegalArgumentException("Invalid input");
+                }
+            } finally {
+                Metrics.endDecode(event, version, moneroPaymentRequest.length(), succeeded);
+            }
+        } finally {
+            codec.release();
+        }
+    }
+
+
+    public static Projection.Result project(CharSequence moneroPaymentRequest, Projection projection) {
+        return project(moneroPaymentRequest, projection, new Projection.Result());
+    }
+
+
+    // Inflates a little at a time, reading each field only once it is complete in the output buffer
+    private static void v1Project(GzipCodec codec, Base64Source source, Projection projection, Projection.Result result,
+                                  DecodeLimits limits) {
+        result.clear();
+        try {
+            codec.beginInflate(source, limits.maxOutputLength());
+            JsonTokenizer tokenizer = codec.tokenizer().reset(codec.output(), 0, 0).limitFields(limits.maxFields());
+            inflateUntil(codec, source, tokenizer, false);
+            tokenizer.beginObject();
+
+            int remaining = projection.size();
+            while (remaining > 0) {
+                inflateUntil(codec, source, tokenizer, true);
+                if (!tokenizer.nextField()) {
+                    // Some projected fields are missing, so the whole payload has been read: check it all
+                    while (!codec.inflateFinished()) {
+                        tokenizer.extend(codec.output(), 0, codec.inflateMore(source, Integer.MAX_VALUE));
+                    }
+                    tokenizer.endDocument();
+                    return;
+                }
+                int index = tokenizer.nextName(Projection.keys());
+                Validator.Field field = index < 0 ? null : Projection.field(index);
+                if (field != null && projection.includes(field) && !result.has(field)) {
+                    result.read(field, tokenizer);
+                    remaining--;
+                } else {
+                    tokenizer.skipValue();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to decode and decompress the string", e);
+        } finally {
+            codec.endInflate(source);
+        }
+    }
+
+
+    // Inflates until the tokenizer has the next token (or, for fields, the whole next field) or the payload ends.
+    // The step doubles while a field is still incomplete, so rescanning a long field stays linear rather than quadratic.
+    private static void inflateUntil(GzipCodec codec, Base64Source source, JsonTokenizer tokenizer, boolean wholeField) throws IOException {
+        int step = PROJECTION_STEP;
+        while (!(wholeField ? tokenizer.hasField() : tokenizer.hasToken()) && !codec.inflateFinished()) {
+            int length = codec.inflateMore(source, step);
+            tokenizer.extend(codec.output(), 0, length);
+            step = Math.min(step * 2, 1 << 20);
+        }
+    }
+
+
+    // Checks the "monero-request:<version>:" prefix in place and leaves the source at the start of the encoded data
+    private static int readVersion(Base64Source source) {
+        int pos = source.position();
+        int end = source.end();
+        if (end - pos <= PREFIX.length()) {
+            throw new IllegalArgumentException("Invalid input format");
+        }
+        for (int i = 0; i < PREFIX.length(); i++) {
+            if (source.charAt(pos++) != PREFIX.charAt(i)) {
+                throw new IllegalArgumentException("Invalid input format");
+            }
         }
+
+        int version = 0;
+        int digits = 0;
+        while (pos < end && source.charAt(pos) != ':') {
+            int digit = source.charAt(pos++) - '0';
+            if (digit < 0 || digit > 9 || ++digits > 9) {
+                throw new IllegalArgumentException("Invalid input");
+            }
+            version = version * 10 + digit;
+        }
+        if (pos == end || digits == 0) {
+            throw new IllegalArgumentException("Invalid input format");
+        }
+
+        source.position(pos + 1);
+        return version;
     }
 
 
     // VERSIONS ////////////////////////////////////////////////////////////////////////////////////////////////////////
     public static Map<String, Object> v1MoneroPaymentRequest(String encodedStr) {
-        // Decode the Base64-encoded string to bytes
-        byte[] decodedBytes = Base64.getDecoder().decode(encodedStr);
+        DecodeLimits.DEFAULT.checkInputLength(encodedStr.length());
+        GzipCodec codec = GzipCodec.acquire();
+        try {
+            return v1MoneroPaymentRequest(codec, codec.source().reset(encodedStr, 0, encodedStr.length()), DecodeLimits.DEFAULT);
+        } finally {
+            codec.release();
+        }
+    }
+
+
+    public static PaymentRequest v1PaymentRequest(String encodedStr) {
+        DecodeLimits.DEFAULT.checkInputLength(encodedStr.length());
+        GzipCodec codec = GzipCodec.acquire();
+        try {
+            return v1PaymentRequest(codec, codec.source().reset(encodedStr, 0, encodedStr.length()), DecodeLimits.DEFAULT);
+        } finally {
+            codec.release();
+        }
+    }
 
-        // Decompress the bytes using gzip decompression
-        byte[] decompressedData = new byte[0];
-        try (GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(decodedBytes))) {
-            decompressedData = gzipInputStream.readAllBytes();
+
+    public static PaymentRequest v2PaymentRequest(String encodedStr) {
+        DecodeLimits.DEFAULT.checkInputLength(encodedStr.length());
+        GzipCodec codec = GzipCodec.acquire();
+        try {
+            return v2PaymentRequest(codec, codec.source().reset(encodedStr, 0, encodedStr.length()), DecodeLimits.DEFAULT);
+        } finally {
+            codec.release();
+        }
+    }
+
+
+    private static Map<String, Object> v1MoneroPaymentRequest(GzipCodec codec, Base64Source source, DecodeLimits limits) {
+        // Parse the JSON bytes straight into a Map (numbers come back as Double)
+        int length = decompress(codec, source, limits);
+        long parseStart = Metrics.start();
+        Map<String, Object> moneroPaymentRequestData = JsonUtils.parseJson(codec.output(), 0, length, limits.maxFields());
+
+        // Convert values that should NOT be doubles back to the proper type (defaults to 0 if unsuccessful)
+        moneroPaymentRequestData.computeIfPresent("days_per_billing_cycle", (key, value) -> toInteger(value));
+        moneroPaymentRequestData.computeIfPresent("number_of_payments", (key, value) -> toInteger(value));
+        Metrics.stop(Metrics.Stage.JSON_PARSE, parseStart);
+
+        return moneroPaymentRequestData;
+    }
+
+
+    private static PaymentRequest v1PaymentRequest(GzipCodec codec, Base64Source source, DecodeLimits limits) {
+        int length = decompress(codec, source, limits);
+        long parseStart = Metrics.start();
+        PaymentRequest request = readPaymentRequest(codec.tokenizer().reset(codec.output(), 0, length).limitFields(limits.maxFields()));
+        Metrics.stop(Metrics.Stage.JSON_PARSE, parseStart);
+        return request;
+    }
+
+
+    private static PaymentRequest v2PaymentRequest(GzipCodec codec, Base64Source source, DecodeLimits limits) {
+        try {
+            return CompactFormat.decode(codec, source, limits);
         } catch (IOException e) {
             throw new RuntimeException("Failed to decode and decompress the string", e);
         }
+    }
 
-        // Convert the decompressed bytes into to a JSON string
-        String jsonStr = new String(decompressedData, java.nio.charset.StandardCharsets.UTF_8);
 
-        // Parse the JSON string into a MutableMap with **every value** as a String
-        Map<String, Object> moneroPaymentRequestData = JsonUtils.parseJson(jsonStr);
+    private static PaymentRequest readPaymentRequest(JsonTokenizer tokenizer) {
+        String customLabel = "";
+        String sellersWallet = "";
+        String currency = "";
+        String amount = "";
+        long paymentId = 0;
+        long startDate = PaymentRequest.NO_START_DATE;
+        int daysPerBillingCycle = 0;
+        int numberOfPayments = 0;
+        String changeIndicatorUrl = "";
 
-        // Convert values that should NOT be strings back to the proper type (defaults to 0 if unsuccessful)
-        moneroPaymentRequestData.computeIfPresent("days_per_billing_cycle", (key, value) -> {
-            try {
-                return Integer.parseInt(value.toString());
-            } catch (NumberFormatException e) {
-                return 0;
+        // Fill the fields directly from the tokens (unknown fields are skipped)
+        tokenizer.beginObject();
+        while (tokenizer.nextField()) {
+            switch (tokenizer.nextName()) {
+                case "custom_label": customLabel = tokenizer.nextString(); break;
+                case "sellers_wallet": sellersWallet = tokenizer.nextString(); break;
+                case "currency": currency = tokenizer.nextString(); break;
+                case "amount": amount = tokenizer.nextString(); break;
+                case "payment_id": paymentId = PaymentRequest.parsePaymentId(tokenizer.nextString()); break;
+                case "start_date":
+                    String startDateString = tokenizer.nextString();
+                    startDate = startDateString.isEmpty() ? PaymentRequest.NO_START_DATE : PaymentRequest.parseStartDate(startDateString);
+                    break;
+                case "days_per_billing_cycle": daysPerBillingCycle = nextInteger(tokenizer); break;
+                case "number_of_payments": numberOfPayments = nextInteger(tokenizer); break;
+                case "change_indicator_url": changeIndicatorUrl = tokenizer.nextString(); break;
+                default: tokenizer.skipValue();
             }
-        });
-        moneroPaymentRequestData.computeIfPresent("number_of_payments", (key, value) -> {
+        }
+        tokenizer.endDocument();
+
+        return new PaymentRequest(customLabel, sellersWallet, currency, amount, paymentId, startDate,
+                daysPerBillingCycle, numberOfPayments, changeIndicatorUrl);
+    }
+
+
+    // Streams the Base64 text through the codec's inflater into its output buffer, returning the inflated length
+    // (a DecodeException stops it once the output passes the limit)
+    private static int decompress(GzipCodec codec, Base64Source source, DecodeLimits limits) {
+        int compressedLength = Metrics.isEnabled() ? decodedLength(source) : 0;
+        long inflateStart = Metrics.start();
+        try {
+            int length = codec.decompress(source, limits.maxOutputLength());
+            Metrics.stop(Metrics.Stage.INFLATE, inflateStart);
+            Metrics.decoded(compressedLength, length);
+            return length;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to decode and decompress the string", e);
+        }
+    }
+
+
+    // Number of bytes the remaining Base64 text decodes to
+    private static int decodedLength(Base64Source source) {
+        int end = source.end();
+        int chars = end - source.position();
+        while (chars > 0 && source.charAt(end - 1) == '=') {
+            chars--;
+            end--;
+        }
+        return chars * 3 / 4;
+    }
+
+
+    // Reads an integer field without boxing (defaults to 0 if unsuccessful, like the Map decoder)
+    static int nextInteger(JsonTokenizer tokenizer) {
+        char token = tokenizer.peekToken();
+        if (token == '-' || (token >= '0' && token <= '9')) {
+            return (int) tokenizer.nextDouble();
+        }
+        if (token == '"') {
             try {
-                return Integer.parseInt(value.toString());
+                return Integer.parseInt(tokenizer.nextString());
             } catch (NumberFormatException e) {
                 return 0;
             }
-        });
+        }
+        tokenizer.skipValue();
+        return 0;
+    }
 
-        return moneroPaymentRequestData;
+
+    private static Integer toInteger(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        try {
+            return Integer.parseInt(value.toString());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
     }
 
 
@@ -317,171 +747,246 @@ class Decode {
  * Provides validation methods for various Monero-related data inputs.
  */
 class Check{
+    /**
+     * Why a value failed validation (VALID if it passed).
+     */
+    enum Reason {
+        VALID,
+        NOT_A_STRING,
+        NOT_AN_INTEGER,
+        UNSUPPORTED_CURRENCY,
+        INVALID_PREFIX,
+        INVALID_LENGTH,
+        INVALID_CHARACTER,
+        INVALID_CHECKSUM,
+        INVALID_FORMAT,
+        INVALID_DATE,
+        NEGATIVE,
+        INVALID_URL
+    }
+
+    // Lookup tables indexed by ASCII character
+    private static final boolean[] BASE58_CHARS = characterTable("123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz");
+    private static final boolean[] PAYMENT_ID_CHARS = characterTable("0123456789abcdef");
+    private static final boolean[] AMOUNT_CHARS = characterTable("0123456789,.");
+
+
     public static boolean name(Object input){
         return input instanceof String;
     }
 
 
     public static boolean currency(String currency) {
-        List<String> supportedCurrencies = new ArrayList<>();
-        supportedCurrencies.add("XMR");
-        supportedCurrencies.add("USD");
-        return supportedCurrencies.contains(currency);
+        return passes(Validator.Field.CURRENCY, currencyReason(currency));
+    }
+
+
+    public static Reason currencyReason(Object currency) {
+        if ("XMR".equals(currency) || "USD".equals(currency)) {
+            return Reason.VALID;
+        }
+        return currency instanceof String ? Reason.UNSUPPORTED_CURRENCY : Reason.NOT_A_STRING;
     }
 
 
     public static boolean wallet(Object walletAddress, boolean allowStandard, boolean allowIntegratedAddress, boolean allowSubaddress) {
+        return passes(Validator.Field.SELLERS_WALLET, walletReason(walletAddress, allowStandard, allowIntegratedAddress, allowSubaddress));
+    }
+
+
+    public static Reason walletReason(Object walletAddress, boolean allowStandard, boolean allowIntegratedAddress, boolean allowSubaddress) {
         // Check if walletAddress is a string
         if (!(walletAddress instanceof String)) {
-            return false;
+            return Reason.NOT_A_STRING;
         }
 
         String walletAddressString = (String) walletAddress;
-
-        // Check if the wallet address starts with the number 4 (or 8 for subaddresses)
-        List<Character> allowedFirstCharacters = new ArrayList<>();
-        if (allowStandard) {
-            allowedFirstCharacters.add('4');
+        int length = walletAddressString.length();
+        if (length == 0) {
+            return Reason.INVALID_LENGTH;
         }
 
-        if (allowSubaddress) {
-            allowedFirstCharacters.add('8');
-        }
-
-        if (!allowedFirstCharacters.contains(walletAddressString.charAt(0))) {
-            return false;
+        // Check if the wallet address starts with the number 4 (or 8 for subaddresses)
+        char first = walletAddressString.charAt(0);
+        if (!(((allowStandard || allowIntegratedAddress) && first == '4') || (allowSubaddress && first == '8'))) {
+            return Reason.INVALID_PREFIX;
         }
 
         // Check if the wallet address is exactly 95 characters long (or 106 for integrated addresses)
-        List<Integer> allowedWalletLengths = new ArrayList<>();
-        if (allowStandard || allowSubaddress){
-            allowedWalletLengths.add(95);
+        if (!(((allowStandard || allowSubaddress) && length == MoneroAddress.STANDARD_LENGTH)
+                || (allowIntegratedAddress && length == MoneroAddress.INTEGRATED_LENGTH))) {
+            return Reason.INVALID_LENGTH;
         }
 
-        if (allowIntegratedAddress) {
-            allowedWalletLengths.add(106);
+        // Check if the wallet address contains only valid characters
+        if (!allCharactersIn(walletAddressString, BASE58_CHARS)) {
+            return Reason.INVALID_CHARACTER;
         }
 
-        if (!allowedWalletLengths.contains(walletAddressString.length())) {
-            return false;
+        // Decode the address and verify its checksum, which catches typos
+        int network = MoneroAddress.networkByte(walletAddressString);
+        if (network == MoneroAddress.INVALID_CHECKSUM) {
+            return Reason.INVALID_CHECKSUM;
+        }
+        if (network < 0) {
+            return Reason.INVALID_FORMAT;
         }
 
-        // Check if the wallet address contains only valid characters
-        String validChars = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz";
-        for (char c : walletAddressString.toCharArray()) {
-            if (!(validChars.contains(String.valueOf(c)))){
-                return false;
+        // Check that the kind of address it decodes to is allowed, and has the right length for its kind
+        if (network == MoneroAddress.INTEGRATED) {
+            if (!allowIntegratedAddress) {
+                return Reason.INVALID_PREFIX;
+            }
+            if (length != MoneroAddress.INTEGRATED_LENGTH) {
+                return Reason.INVALID_LENGTH;
             }
+        } else if ((network == MoneroAddress.STANDARD && allowStandard) || (network == MoneroAddress.SUBADDRESS && allowSubaddress)) {
+            if (length != MoneroAddress.STANDARD_LENGTH) {
+                return Reason.INVALID_LENGTH;
+            }
+        } else {
+            return Reason.INVALID_PREFIX;
         }
 
         // If it passed all these checks
-        return true;
+        return Reason.VALID;
     }
 
 
     public static boolean paymentID(Object paymentId){
-        String validChars = "0123456789abcdef";
+        return passes(Validator.Field.PAYMENT_ID, paymentIDReason(paymentId));
+    }
 
+
+    public static Reason paymentIDReason(Object paymentId) {
         if (!(paymentId instanceof String)) {
-            return false;  // Not a string
+            return Reason.NOT_A_STRING;
         }
 
         String paymentIdString = (String) paymentId;
-
-        if (paymentIdString.length() == 16) {
-            for (char c : paymentIdString.toCharArray()) {
-                if (!(validChars.contains(String.valueOf(c)))) {
-                    return false;  // Invalid character found
-                }
-            }
-            return true;  // All characters are valid
-        } else {
-            return false;  // Length is not 16 characters
+        if (paymentIdString.length() != 16) {
+            return Reason.INVALID_LENGTH;
         }
+        return allCharactersIn(paymentIdString, PAYMENT_ID_CHARS) ? Reason.VALID : Reason.INVALID_CHARACTER;
     }
 
 
     public static boolean startDate(Object startDate) {
-        if (startDate instanceof String) {
-            String startDateString = (String) startDate;
+        return passes(Validator.Field.START_DATE, startDateReason(startDate));
+    }
 
-            // if it is an empty string
-            if (startDateString.isEmpty()) {
-                return true;
-            }
-            // if not empty, make sure it is the proper format
-            try {
-                new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").parse(startDateString);
-                return true;
-            } catch (ParseException e) {
-                System.out.println(e);
-            }
+
+    // Strict check of the yyyy-MM-dd'T'HH:mm:ss.SSS'Z' form (an empty string is allowed)
+    public static Reason startDateReason(Object startDate) {
+        if (!(startDate instanceof String)) {
+            return Reason.NOT_A_STRING;
         }
-        return false;
+
+        String startDateString = (String) startDate;
+        if (startDateString.isEmpty()) {
+            return Reason.VALID;
+        }
+        return Rfc3339.reason(startDateString);
     }
 
 
     public static boolean amount(Object amount) {
-        if (amount instanceof String) {
-            String amountString = (String) amount;
+        return passes(Validator.Field.AMOUNT, amountReason(amount));
+    }
 
-            if (amountString.matches("[\\d,.]+")) {
-                return true;
-            }
+
+    public static Reason amountReason(Object amount) {
+        if (!(amount instanceof String)) {
+            return Reason.NOT_A_STRING;
         }
-        return false;
+
+        String amountString = (String) amount;
+        if (amountString.isEmpty()) {
+            return Reason.INVALID_LENGTH;
+        }
+        return allCharactersIn(amountString, AMOUNT_CHARS) ? Reason.VALID : Reason.INVALID_CHARACTER;
     }
 
 
     public static boolean daysPerBillingCycle(Object billingCycle) {
-        if (billingCycle instanceof Integer) {
-            int billingCycleInt = (int) billingCycle;
+        return passes(Validator.Field.DAYS_PER_BILLING_CYCLE, nonNegativeIntegerReason(billingCycle));
+    }
+
+
+    public static boolean numberOfPayments(Object numberOfPayments) {
+        return passes(Validator.Field.NUMBER_OF_PAYMENTS, nonNegativeIntegerReason(numberOfPayments));
+    }
+
+
+    public static Reason nonNegativeIntegerReason(Object value) {
+        if (!(value instanceof Integer)) {
+            return Reason.NOT_AN_INTEGER;
+        }
+        return (int) value >= 0 ? Reason.VALID : Reason.NEGATIVE;
+    }
+
+
+    public static boolean changeIndicatorUrl(Object changeIndicatorUrl) {
+        return passes(Validator.Field.CHANGE_INDICATOR_URL, changeIndicatorUrlReason(changeIndicatorUrl));
+    }
 
-            if (billingCycleInt >= 0) {
-                return true;
+
+    public static Reason changeIndicatorUrlReason(Object changeIndicatorUrl) {
+        if (!(changeIndicatorUrl instanceof String)) {
+            return Reason.NOT_A_STRING;
+        }
+
+        String changeIndicatorUrlString = (String) changeIndicatorUrl;
+        if (changeIndicatorUrlString.isEmpty()) {
+            return Reason.VALID;
+        }
+        try {
+            // Create a URI from the string
+            URI uri = new URI(changeIndicatorUrlString);
+            // Convert URI to URL
+            URL parsedUrl = uri.toURL();
+            if (
+                    (parsedUrl.getProtocol() != null) &&
+                    (!parsedUrl.getProtocol().isEmpty()) &&
+                    (parsedUrl.getHost() != null) &&
+                    (!parsedUrl.getHost().isEmpty())
+            ) {
+                return Reason.VALID; // Well-formed URL
             }
+        } catch (Exception e) {
+            // URL is not well-formed
         }
-        return false;
+        return Reason.INVALID_URL;
     }
 
 
-    public static boolean numberOfPayments(Object numberOfPayments) {
-        if (numberOfPayments instanceof Integer) {
-            int numberOfPaymentsInt = (int) numberOfPayments;
-             if (numberOfPaymentsInt >= 0) {
-                 return true;
-             }
+    // Counts failures for the metrics hook
+    private static boolean passes(Validator.Field field, Reason reason) {
+        if (reason == Reason.VALID) {
+            return true;
         }
+        Metrics.validationFailure(field, reason);
         return false;
     }
 
 
-    public static boolean changeIndicatorUrl(Object changeIndicatorUrl) {
-        if (changeIndicatorUrl instanceof String) {
-            String changeIndicatorUrlString = (String) changeIndicatorUrl;
+    private static boolean[] characterTable(String characters) {
+        boolean[] table = new boolean[128];
+        for (int i = 0; i < characters.length(); i++) {
+            table[characters.charAt(i)] = true;
+        }
+        return table;
+    }
 
-            if (changeIndicatorUrlString.isEmpty()) {
-                return true;
-            } else {
-                try {
-                    // Create a URI from the string
-                    URI uri = new URI(changeIndicatorUrlString);
-                    // Convert URI to URL
-                    URL parsedUrl = uri.toURL();
-                    if (
-                            (parsedUrl.getProtocol() != null) &&
-                            (!parsedUrl.getProtocol().isEmpty()) &&
-                            (parsedUrl.getHost() != null) &&
-                            (!parsedUrl.getHost().isEmpty())
-                    ) {
-                        return true; // Well-formed URL
-                    }
-                } catch (Exception e) {
-                    System.out.println(e); // URL is not well-formed
-                }
+
+    private static boolean allCharactersIn(String value, boolean[] table) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 128 || !table[c]) {
+                return false;
             }
         }
-        return false;
+        return true;
     }
 
 
@@ -0,0 +1,322 @@
+package monerorequest;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * Pluggable instrumentation for encoding, decoding and validation. Nothing is measured until a Recorder is installed;
+ * until then each hook is a single volatile read. Encode and decode also emit JFR events while a recording is running.
+ */
+final class Metrics {
+    private static final EventType ENCODE_EVENT = EventType.getEventType(EncodeEvent.class);
+    private static final EventType DECODE_EVENT = EventType.getEventType(DecodeEvent.class);
+
+    private static volatile Recorder recorder;
+
+
+    /**
+     * A timed step of encoding or decoding.
+     */
+    enum Stage {
+        VALIDATE,
+        JSON_WRITE,
+        // UTF-8 encoding and gzip
+        COMPRESS,
+        BASE64_ENCODE,
+        // Base64 decoding and gunzip, which are streamed together
+        INFLATE,
+        JSON_PARSE
+    }
+
+
+    /**
+     * Receives measurements; called on the encoding or decoding thread, so implementations must be thread-safe and fast.
+     */
+    interface Recorder {
+        void stage(Stage stage, long nanos);
+
+        void encoded(int uncompressedBytes, int compressedBytes);
+
+        void decoded(int compressedBytes, int uncompressedBytes);
+
+        void validationFailure(Validator.Field field, Check.Reason reason);
+    }
+
+
+    private Metrics() {
+    }
+
+
+    public static void install(Recorder recorder) {
+        Metrics.recorder = recorder;
+    }
+
+
+    public static void uninstall() {
+        recorder = null;
+    }
+
+
+    public static boolean isEnabled() {
+        return recorder != null;
+    }
+
+
+    // Start of a timed stage (0 when disabled, so the clock isn't read)
+    static long start() {
+        return recorder == null ? 0 : System.nanoTime();
+    }
+
+
+    static void stop(Stage stage, long startNanos) {
+        Recorder current = recorder;
+        if (current != null && startNanos != 0) {
+            current.stage(stage, System.nanoTime() - startNanos);
+        }
+    }
+
+
+    static void encoded(int uncompressedBytes, int compressedBytes) {
+        Recorder current = recorder;
+        if (current != null) {
+            current.encoded(uncompressedBytes, compressedBytes);
+        }
+    }
+
+
+    static void decoded(int compressedBytes, int uncompressedBytes) {
+        Recorder current = recorder;
+        if (current != null) {
+            current.decoded(compressedBytes, uncompressedBytes);
+        }
+    }
+
+
+    static void validationFailure(Validator.Field field, Check.Reason reason) {
+        Recorder current = recorder;
+        if (current != null) {
+            current.validationFailure(field, reason);
+        }
+    }
+
+
+    // A started encode event, or null when no JFR recording has it enabled (so nothing is allocated)
+    static EncodeEvent beginEncode() {
+        if (!ENCODE_EVENT.isEnabled()) {
+            return null;
+        }
+        EncodeEvent event = new EncodeEvent();
+        event.begin();
+        return event;
+    }
+
+
+    static String endEncode(EncodeEvent event, String version, String moneroPaymentRequest) {
+        if (event != null && event.shouldCommit()) {
+            event.version = version;
+            event.encodedLength = moneroPaymentRequest.length();
+            event.commit();
+        }
+        return moneroPaymentRequest;
+    }
+
+
+    static DecodeEvent beginDecode() {
+        if (!DECODE_EVENT.isEnabled()) {
+            return null;
+        }
+        DecodeEvent event = new DecodeEvent();
+        event.begin();
+        return event;
+    }
+
+
+    static void endDecode(DecodeEvent event, int version, int encodedLength, boolean succeeded) {
+        if (event != null && event.shouldCommit()) {
+            event.version = version;
+            event.encodedLength = encodedLength;
+            event.succeeded = succeeded;
+            event.commit();
+        }
+    }
+
+
+    /**
+     * Ready-made Recorder: a latency histogram per stage, byte totals, and validation failures by field and reason.
+     * Histogram buckets are powers of two (in nanoseconds), so percentiles are accurate to within a factor of two.
+     */
+    static final class Histograms implements Recorder {
+        private static final int BUCKETS = 64;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(Stage.values().length * BUCKETS);
+        private final LongAdder[] totalNanos = new LongAdder[Stage.values().length];
+        private final LongAdder encodedUncompressed = new LongAdder();
+        private final LongAdder encodedCompressed = new LongAdder();
+        private final LongAdder decodedCompressed = new LongAdder();
+        private final LongAdder decodedUncompressed = new LongAdder();
+        private final AtomicLongArray failures = new AtomicLongArray(Validator.Field.values().length * Check.Reason.values().length);
+
+
+        Histograms() {
+            for (int i = 0; i < totalNanos.length; i++) {
+                totalNanos[i] = new LongAdder();
+            }
+        }
+
+
+        @Override
+        public void stage(Stage stage, long nanos) {
+            int bucket = nanos <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(nanos);
+            buckets.incrementAndGet(stage.ordinal() * BUCKETS + Math.min(bucket, BUCKETS - 1));
+            totalNanos[stage.ordinal()].add(nanos);
+        }
+
+
+        @Override
+        public void encoded(int uncompressedBytes, int compressedBytes) {
+            encodedUncompressed.add(uncompressedBytes);
+            encodedCompressed.add(compressedBytes);
+        }
+
+
+        @Override
+        public void decoded(int compressedBytes, int uncompressedBytes) {
+            decodedCompressed.add(compressedBytes);
+            decodedUncompressed.add(uncompressedBytes);
+        }
+
+
+        @Override
+        public void validationFailure(Validator.Field field, Check.Reason reason) {
+            failures.incrementAndGet(field.ordinal() * Check.Reason.values().length + reason.ordinal());
+        }
+
+
+        public long count(Stage stage) {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += buckets.get(stage.ordinal() * BUCKETS + i);
+            }
+            return count;
+        }
+
+
+        public double meanNanos(Stage stage) {
+            long count = count(stage);
+            return count == 0 ? 0 : (double) totalNanos[stage.ordinal()].sum() / count;
+        }
+
+
+        // Upper bound (in nanoseconds) of the bucket holding the given percentile (0 to 100)
+        public long percentileNanos(Stage stage, double percentile) {
+            long count = count(stage);
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(stage.ordinal() * BUCKETS + i);
+                if (seen >= Math.max(1, rank)) {
+                    return i == 0 ? 0 : i >= 63 ? Long.MAX_VALUE : (1L << i) - 1;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+
+        public long encodedUncompressedBytes() {
+            return encodedUncompressed.sum();
+        }
+
+
+        public long encodedCompressedBytes() {
+            return encodedCompressed.sum();
+        }
+
+
+        public long decodedCompressedBytes() {
+            return decodedCompressed.sum();
+        }
+
+
+        public long decodedUncompressedBytes() {
+            return decodedUncompressed.sum();
+        }
+
+
+        public long failures(Validator.Field field, Check.Reason reason) {
+            return failures.get(field.ordinal() * Check.Reason.values().length + reason.ordinal());
+        }
+
+
+        @Override
+        public String toString() {
+            StringBuilder report = new StringBuilder();
+            for (Stage stage : Stage.values()) {
+                long count = count(stage);
+                if (count > 0) {
+                    report.append(String.format("%-14s %10d calls  mean %10.0f ns  p50 <= %10d ns  p99 <= %10d ns%n",
+                            stage, count, meanNanos(stage), percentileNanos(stage, 50), percentileNanos(stage, 99)));
+                }
+            }
+            report.append(String.format("encoded %d -> %d bytes, decoded %d -> %d bytes%n",
+                    encodedUncompressedBytes(), encodedCompressedBytes(), decodedCompressedBytes(), decodedUncompressedBytes()));
+            for (Validator.Field field : Validator.Field.values()) {
+                for (Check.Reason reason : Check.Reason.values()) {
+                    long count = failures(field, reason);
+                    if (count > 0) {
+                        report.append(String.format("%s %s: %d%n", field, reason, count));
+                    }
+                }
+            }
+            return report.toString();
+        }
+
+
+    }
+
+
+    /**
+     * JFR event for one monero-request encode.
+     */
+    @Name("monerorequest.Encode")
+    @Label("Monero Request Encode")
+    @Category("Monero Request")
+    @Description("Encoding a payment request into a monero-request string")
+    static final class EncodeEvent extends jdk.jfr.Event {
+        @Label("Version")
+        String version;
+
+        @Label("Encoded Length")
+        int encodedLength;
+    }
+
+
+    /**
+     * JFR event for one monero-request decode.
+     */
+    @Name("monerorequest.Decode")
+    @Label("Monero Request Decode")
+    @Category("Monero Request")
+    @Description("Decoding a monero-request string into a payment request")
+    static final class DecodeEvent extends jdk.jfr.Event {
+        @Label("Version")
+        int version;
+
+        @Label("Encoded Length")
+        int encodedLength;
+
+        @Label("Succeeded")
+        boolean succeeded;
+    }
+
+
+}
@@ -0,0 +1,307 @@
+package monerorequest;
+
+import java.util.Arrays;
+
+
+/**
+ * Allocation-free Monero address decoding: Monero's block Base58 plus the Keccak-256 checksum.
+ * Decodes straight into a per-thread Keccak state, since an address (65 or 73 hashed bytes) fits in a single block.
+ */
+final class MoneroAddress {
+    // Mainnet network bytes
+    public static final int STANDARD = 0x12;
+    public static final int INTEGRATED = 0x13;
+    public static final int SUBADDRESS = 0x2a;
+
+    // Negative results of networkByte
+    public static final int INVALID_LENGTH = -1;
+    public static final int INVALID_CHARACTER = -2;
+    public static final int INVALID_ENCODING = -3;
+    public static final int INVALID_CHECKSUM = -4;
+
+    public static final int STANDARD_LENGTH = 95;
+    public static final int INTEGRATED_LENGTH = 106;
+
+    private static final String ALPHABET = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz";
+    // 8 bytes encode to 11 characters; both address lengths end with a 7 character block holding 5 bytes
+    private static final int FULL_BLOCK_CHARS = 11;
+    private static final int LAST_BLOCK_CHARS = 7;
+    private static final int LAST_BLOCK_BYTES = 5;
+    private static final byte[] DIGITS = new byte[128];
+
+    // Keccak-f[1600] round constants, rho rotations and pi lane order
+    private static final long[] ROUND_CONSTANTS = {
+            0x0000000000000001L, 0x0000000000008082L, 0x800000000000808aL, 0x8000000080008000L,
+            0x000000000000808bL, 0x0000000080000001L, 0x8000000080008081L, 0x8000000000008009L,
+            0x000000000000008aL, 0x0000000000000088L, 0x0000000080008009L, 0x000000008000000aL,
+            0x000000008000808bL, 0x800000000000008bL, 0x8000000000008089L, 0x8000000000008003L,
+            0x8000000000008002L, 0x8000000000000080L, 0x000000000000800aL, 0x800000008000000aL,
+            0x8000000080008081L, 0x8000000000008080L, 0x0000000080000001L, 0x8000000080008008L
+    };
+    private static final int[] ROTATIONS = {1, 3, 6, 10, 15, 21, 28, 36, 45, 55, 2, 14, 27, 41, 56, 8, 25, 43, 62, 18, 39, 61, 20, 44};
+    private static final int[] PI_LANES = {10, 7, 11, 17, 18, 3, 5, 16, 8, 21, 24, 4, 15, 23, 19, 13, 12, 2, 20, 14, 22, 9, 6, 1};
+    // Keccak-256 absorbs 136 bytes (17 lanes) per block
+    private static final int RATE_LANES = 17;
+
+    // Keccak state lanes, plus the address checksum in the last slot
+    private static final int CHECKSUM = 25;
+    private static final ThreadLocal<long[]> STATE = ThreadLocal.withInitial(() -> new long[CHECKSUM + 1]);
+
+    static {
+        Arrays.fill(DIGITS, (byte) -1);
+        for (int i = 0; i < ALPHABET.length(); i++) {
+            DIGITS[ALPHABET.charAt(i)] = (byte) i;
+        }
+    }
+
+
+    private MoneroAddress() {
+    }
+
+
+    // The address's network byte (e.g. STANDARD) if it decodes and its checksum matches, otherwise a negative INVALID_* code
+    public static int networkByte(CharSequence address) {
+        long[] state = STATE.get();
+        int network = absorb(address, state);
+        if (network < 0) {
+            return network;
+        }
+        return checksumMatches(state) ? network : INVALID_CHECKSUM;
+    }
+
+
+    public static boolean isValid(CharSequence address) {
+        return networkByte(address) >= 0;
+    }
+
+
+    // The 8-byte payment ID embedded in an integrated address
+    public static long paymentId(CharSequence address) {
+        long[] state = STATE.get();
+        int network = absorb(address, state);
+        if (network != INTEGRATED) {
+            throw new IllegalArgumentException("Not an integrated address");
+        }
+        // Bytes 65-72: the last 7 bytes of block 8 and the first byte of the final block
+        long paymentId = (Long.reverseBytes(state[8]) << 8) | (state[9] & 0xff);
+        if (!checksumMatches(state)) {
+            throw new IllegalArgumentException("Invalid address checksum");
+        }
+        return paymentId;
+    }
+
+
+    // Base58-decodes a standard or integrated address into its raw bytes (69 or 77, checksum included), returning the
+    // byte count or a negative INVALID_* code. The checksum isn't verified; encode gives back exactly the same text.
+    static int decode(CharSequence address, byte[] out, int offset) {
+        int fullBlocks;
+        if (address.length() == STANDARD_LENGTH) {
+            fullBlocks = 8;
+        } else if (address.length() == INTEGRATED_LENGTH) {
+            fullBlocks = 9;
+        } else {
+            return INVALID_LENGTH;
+        }
+
+        int n = offset;
+        for (int block = 0; block < fullBlocks; block++) {
+            int pos = block * FULL_BLOCK_CHARS;
+            long value = 0;
+            for (int i = pos; i < pos + FULL_BLOCK_CHARS - 1; i++) {
+                int digit = digit(address.charAt(i));
+                if (digit < 0) {
+                    return INVALID_CHARACTER;
+                }
+                value = value * 58 + digit;
+            }
+            int digit = digit(address.charAt(pos + FULL_BLOCK_CHARS - 1));
+            if (digit < 0) {
+                return INVALID_CHARACTER;
+            }
+            long low = value * 58;
+            long sum = low + digit;
+            if (Math.multiplyHigh(value, 58) != 0 || Long.compareUnsigned(sum, low) < 0) {
+                return INVALID_ENCODING;
+            }
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out[n++] = (byte) (sum >>> shift);
+            }
+        }
+
+        int pos = fullBlocks * FULL_BLOCK_CHARS;
+        long last = 0;
+        for (int i = pos; i < pos + LAST_BLOCK_CHARS; i++) {
+            int digit = digit(address.charAt(i));
+            if (digit < 0) {
+                return INVALID_CHARACTER;
+            }
+            last = last * 58 + digit;
+        }
+        if (last >>> (8 * LAST_BLOCK_BYTES) != 0) {
+            return INVALID_ENCODING;
+        }
+        for (int shift = 8 * (LAST_BLOCK_BYTES - 1); shift >= 0; shift -= 8) {
+            out[n++] = (byte) (last >>> shift);
+        }
+        return n - offset;
+    }
+
+
+    // Base58-encodes the raw bytes of a standard (69) or integrated (77) address
+    static String encode(byte[] bytes, int offset, int length) {
+        int fullBlocks = (length - LAST_BLOCK_BYTES) / 8;
+        if ((fullBlocks != 8 && fullBlocks != 9) || fullBlocks * 8 + LAST_BLOCK_BYTES != length) {
+            throw new IllegalArgumentException("Not the length of a standard or integrated address: " + length);
+        }
+        char[] text = new char[fullBlocks * FULL_BLOCK_CHARS + LAST_BLOCK_CHARS];
+        int p = offset;
+        for (int block = 0; block < fullBlocks; block++) {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = value << 8 | (bytes[p++] & 0xff);
+            }
+            int pos = block * FULL_BLOCK_CHARS;
+            // The first division has to be unsigned; after it the value fits in 63 bits
+            text[pos + FULL_BLOCK_CHARS - 1] = ALPHABET.charAt((int) Long.remainderUnsigned(value, 58));
+            value = Long.divideUnsigned(value, 58);
+            for (int i = pos + FULL_BLOCK_CHARS - 2; i >= pos; i--) {
+                text[i] = ALPHABET.charAt((int) (value % 58));
+                value /= 58;
+            }
+        }
+        long last = 0;
+        for (int i = 0; i < LAST_BLOCK_BYTES; i++) {
+            last = last << 8 | (bytes[p++] & 0xff);
+        }
+        int pos = fullBlocks * FULL_BLOCK_CHARS;
+        for (int i = pos + LAST_BLOCK_CHARS - 1; i >= pos; i--) {
+            text[i] = ALPHABET.charAt((int) (last % 58));
+            last /= 58;
+        }
+        return new String(text);
+    }
+
+
+    // Base58-decodes the address into the Keccak state as a padded message (everything but the checksum)
+    private static int absorb(CharSequence address, long[] state) {
+        int fullBlocks;
+        if (address.length() == STANDARD_LENGTH) {
+            fullBlocks = 8;
+        } else if (address.length() == INTEGRATED_LENGTH) {
+            fullBlocks = 9;
+        } else {
+            return INVALID_LENGTH;
+        }
+
+        for (int block = 0; block < fullBlocks; block++) {
+            int pos = block * FULL_BLOCK_CHARS;
+            long value = 0;
+            // 58^10 fits in 63 bits, so only the last digit can overflow
+            for (int i = pos; i < pos + FULL_BLOCK_CHARS - 1; i++) {
+                int digit = digit(address.charAt(i));
+                if (digit < 0) {
+                    return INVALID_CHARACTER;
+                }
+                value = value * 58 + digit;
+            }
+            int digit = digit(address.charAt(pos + FULL_BLOCK_CHARS - 1));
+            if (digit < 0) {
+                return INVALID_CHARACTER;
+            }
+            long low = value * 58;
+            long sum = low + digit;
+            if (Math.multiplyHigh(value, 58) != 0 || Long.compareUnsigned(sum, low) < 0) {
+                return INVALID_ENCODING;
+            }
+            // Blocks are big-endian, Keccak lanes little-endian
+            state[block] = Long.reverseBytes(sum);
+        }
+
+        int pos = fullBlocks * FULL_BLOCK_CHARS;
+        long last = 0;
+        for (int i = pos; i < pos + LAST_BLOCK_CHARS; i++) {
+            int digit = digit(address.charAt(i));
+            if (digit < 0) {
+                return INVALID_CHARACTER;
+            }
+            last = last * 58 + digit;
+        }
+        if (last >>> (8 * LAST_BLOCK_BYTES) != 0) {
+            return INVALID_ENCODING;
+        }
+
+        // The final block is one message byte followed by the 4 checksum bytes; then comes Keccak's 0x01 ... 0x80 padding
+        state[fullBlocks] = ((last >>> 32) & 0xff) | 0x100;
+        for (int lane = fullBlocks + 1; lane < 25; lane++) {
+            state[lane] = 0;
+        }
+        state[RATE_LANES - 1] ^= 0x8000000000000000L;
+        state[CHECKSUM] = last & 0xffffffffL;
+
+        return (int) (Long.reverseBytes(state[0]) >>> 56);
+    }
+
+
+    // Hashes the absorbed message and compares the first 4 bytes of the hash with the checksum
+    private static boolean checksumMatches(long[] state) {
+        keccakF(state);
+        return Integer.reverseBytes((int) state[0]) == (int) state[CHECKSUM];
+    }
+
+
+    private static int digit(char c) {
+        return c < 128 ? DIGITS[c] : -1;
+    }
+
+
+    private static void keccakF(long[] state) {
+        for (int round = 0; round < 24; round++) {
+            // Theta
+            long c0 = state[0] ^ state[5] ^ state[10] ^ state[15] ^ state[20];
+            long c1 = state[1] ^ state[6] ^ state[11] ^ state[16] ^ state[21];
+            long c2 = state[2] ^ state[7] ^ state[12] ^ state[17] ^ state[22];
+            long c3 = state[3] ^ state[8] ^ state[13] ^ state[18] ^ state[23];
+            long c4 = state[4] ^ state[9] ^ state[14] ^ state[19] ^ state[24];
+            long d0 = c4 ^ Long.rotateLeft(c1, 1);
+            long d1 = c0 ^ Long.rotateLeft(c2, 1);
+            long d2 = c1 ^ Long.rotateLeft(c3, 1);
+            long d3 = c2 ^ Long.rotateLeft(c4, 1);
+            long d4 = c3 ^ Long.rotateLeft(c0, 1);
+            for (int i = 0; i < 25; i += 5) {
+                state[i] ^= d0;
+                state[i + 1] ^= d1;
+                state[i + 2] ^= d2;
+                state[i + 3] ^= d3;
+                state[i + 4] ^= d4;
+            }
+
+            // Rho and pi
+            long carry = state[1];
+            for (int i = 0; i < 24; i++) {
+                int lane = PI_LANES[i];
+                long next = state[lane];
+                state[lane] = Long.rotateLeft(carry, ROTATIONS[i]);
+                carry = next;
+            }
+
+            // Chi
+            for (int i = 0; i < 25; i += 5) {
+                long a0 = state[i];
+                long a1 = state[i + 1];
+                long a2 = state[i + 2];
+                long a3 = state[i + 3];
+                long a4 = state[i + 4];
+                state[i] = a0 ^ (~a1 & a2);
+                state[i + 1] = a1 ^ (~a2 & a3);
+                state[i + 2] = a2 ^ (~a3 & a4);
+                state[i + 3] = a3 ^ (~a4 & a0);
+                state[i + 4] = a4 ^ (~a0 & a1);
+            }
+
+            // Iota
+            state[0] ^= ROUND_CONSTANTS[round];
+        }
+    }
+
+
+}
@@ -0,0 +1,257 @@
+package monerorequest;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Generates random 64-bit payment IDs from SecureRandom, drawing entropy in batches from a small set of shared generators.
+ * A generator created with an expected ID count also remembers every ID it issues, so it never issues one twice.
+ */
+final class PaymentIdGenerator {
+    private static final PaymentIdGenerator DEFAULT = new PaymentIdGenerator();
+    // Random IDs drawn per SecureRandom call
+    private static final int BATCH_SIZE = 64;
+    // Works with any kind of thread: generators are locked per call rather than pinned to a thread
+    private static final Entropy[] ENTROPY = newEntropy(Runtime.getRuntime().availableProcessors() * 2);
+
+    // Null when uniqueness isn't guarded
+    private final IdSet issued;
+
+
+    // Unguarded: IDs are random, so collisions are unlikely but possible
+    PaymentIdGenerator() {
+        this.issued = null;
+    }
+
+
+    // Guarded: never issues the same ID twice; each issued ID takes 16 to 32 bytes of memory
+    PaymentIdGenerator(int expectedIds) {
+        if (expectedIds < 0) {
+            throw new IllegalArgumentException("expectedIds can't be negative");
+        }
+        this.issued = new IdSet(expectedIds);
+    }
+
+
+    // The shared, unguarded generator used for default payment IDs
+    public static PaymentIdGenerator defaultGenerator() {
+        return DEFAULT;
+    }
+
+
+    public long nextId() {
+        if (issued == null) {
+            return nextRandom();
+        }
+        long id;
+        do {
+            id = nextRandom();
+        } while (!issued.add(id));
+        return id;
+    }
+
+
+    // The next ID as the 16-character hex payment ID string
+    public String nextHex() {
+        return PaymentRequest.formatPaymentId(nextId());
+    }
+
+
+    // Records an ID issued elsewhere (e.g. an existing subscription) so it is never generated; false if already known
+    public boolean markUsed(long id) {
+        if (issued == null) {
+            throw new IllegalStateException("Generator does not guard uniqueness");
+        }
+        return issued.add(id);
+    }
+
+
+    public boolean markUsed(String paymentId) {
+        return markUsed(PaymentRequest.parsePaymentId(paymentId));
+    }
+
+
+    public boolean isGuarded() {
+        return issued != null;
+    }
+
+
+    // IDs issued or marked as used so far (always 0 for an unguarded generator)
+    public long issuedCount() {
+        return issued == null ? 0 : issued.size();
+    }
+
+
+    // Takes the first free generator, starting from the thread's own slot, and waits on that slot if all are busy
+    private static long nextRandom() {
+        int size = ENTROPY.length;
+        int start = (int) (Thread.currentThread().getId() % size);
+        for (int i = 0; i < size; i++) {
+            Entropy entropy = ENTROPY[(start + i) % size];
+            if (entropy.lock.tryLock()) {
+                try {
+                    return entropy.nextLong();
+                } finally {
+                    entropy.lock.unlock();
+                }
+            }
+        }
+        Entropy entropy = ENTROPY[start];
+        entropy.lock.lock();
+        try {
+            return entropy.nextLong();
+        } finally {
+            entropy.lock.unlock();
+        }
+    }
+
+
+    private static Entropy[] newEntropy(int count) {
+        Entropy[] entropy = new Entropy[count];
+        for (int i = 0; i < count; i++) {
+            entropy[i] = new Entropy();
+        }
+        return entropy;
+    }
+
+
+    /**
+     * A shared SecureRandom and its current batch of random bytes, used by one thread at a time.
+     */
+    private static final class Entropy {
+        // A ReentrantLock rather than synchronized, so a virtual thread waiting on it doesn't pin its carrier
+        private final ReentrantLock lock = new ReentrantLock();
+        private final SecureRandom random = new SecureRandom();
+        private final byte[] bytes = new byte[BATCH_SIZE * Long.BYTES];
+        private final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        private int next = BATCH_SIZE;
+
+
+        private long nextLong() {
+            if (next == BATCH_SIZE) {
+                random.nextBytes(bytes);
+                next = 0;
+            }
+            return buffer.getLong(next++ * Long.BYTES);
+        }
+
+
+    }
+
+
+    /**
+     * Concurrent set of primitive longs: independently locked open-addressing tables, picked by the key's hash.
+     */
+    private static final class IdSet {
+        private final Stripe[] stripes;
+        private final int stripeShift;
+
+
+        private IdSet(int expectedIds) {
+            int stripeCount = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4) * 2 - 1);
+            stripes = new Stripe[stripeCount];
+            for (int i = 0; i < stripeCount; i++) {
+                stripes[i] = new Stripe(expectedIds / stripeCount + 1);
+            }
+            stripeShift = 64 - Integer.numberOfTrailingZeros(stripeCount);
+        }
+
+
+        private boolean add(long id) {
+            long hash = mix(id);
+            // High bits pick the stripe, low bits the slot, so the two stay independent
+            Stripe stripe = stripes[stripeShift == 64 ? 0 : (int) (hash >>> stripeShift)];
+            synchronized (stripe) {
+                return stripe.add(id, hash);
+            }
+        }
+
+
+        private long size() {
+            long size = 0;
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    size += stripe.size;
+                }
+            }
+            return size;
+        }
+
+
+        // Spreads sequential IDs (from markUsed) as evenly as random ones
+        private static long mix(long id) {
+            long hash = id * 0x9e3779b97f4a7c15L;
+            return hash ^ (hash >>> 32);
+        }
+
+
+    }
+
+
+    /**
+     * Linear-probing long table where 0 marks an empty slot (the ID 0 itself is tracked separately).
+     */
+    private static final class Stripe {
+        private long[] keys;
+        private int size;
+        private boolean hasZero;
+
+
+        private Stripe(int expected) {
+            // Keep the load factor at or below one half
+            keys = new long[Math.max(16, Integer.highestOneBit(Math.max(1, expected) * 2 - 1) * 2)];
+        }
+
+
+        private boolean add(long id, long hash) {
+            if (id == 0) {
+                if (hasZero) {
+                    return false;
+                }
+                hasZero = true;
+                size++;
+                return true;
+            }
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            if (!insert(keys, id, hash)) {
+                return false;
+            }
+            size++;
+            return true;
+        }
+
+
+        private void grow() {
+            long[] grown = new long[keys.length * 2];
+            for (long key : keys) {
+                if (key != 0) {
+                    insert(grown, key, IdSet.mix(key));
+                }
+            }
+            keys = grown;
+        }
+
+
+        private static boolean insert(long[] table, long id, long hash) {
+            int mask = table.length - 1;
+            for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+                long key = table[slot];
+                if (key == 0) {
+                    table[slot] = id;
+                    return true;
+                }
+                if (key == id) {
+                    return false;
+                }
+            }
+        }
+
+
+    }
+
+
+}
@@ -0,0 +1,387 @@
+package monerorequest;
+
+import java.util.concurrent.locks.StampedLock;
+
+
+/**
+ * Matches incoming transfers to payment requests by payment ID, keyed on the ID as a primitive long.
+ * Striped open-addressing tables: writers lock one stripe, readers are lock-free unless they race a writer.
+ */
+final class PaymentIndex {
+    // Expected amount for requests that aren't priced in XMR (or whose amount can't be read)
+    public static final long UNKNOWN_AMOUNT = Amounts.INVALID;
+
+    private final Stripe[] stripes;
+    private final int stripeShift;
+
+
+    PaymentIndex() {
+        this(1024);
+    }
+
+
+    PaymentIndex(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize can't be negative");
+        }
+        int stripeCount = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4) * 2 - 1);
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(expectedSize / stripeCount + 1);
+        }
+        stripeShift = 64 - Integer.numberOfTrailingZeros(stripeCount);
+    }
+
+
+    // Indexes a request by its payment ID, returning the request it replaced (or null)
+    public PaymentRequest put(PaymentRequest request) {
+        long paymentId = request.paymentId();
+        long hash = mix(paymentId);
+        return stripeFor(hash).put(paymentId, hash, request, xmrAtomicUnits(request));
+    }
+
+
+    // Decodes and indexes a monero-request string
+    public PaymentRequest put(String moneroPaymentRequest) {
+        return put(Decode.paymentRequest(moneroPaymentRequest));
+    }
+
+
+    public PaymentRequest get(long paymentId) {
+        long hash = mix(paymentId);
+        return stripeFor(hash).get(paymentId, hash);
+    }
+
+
+    public PaymentRequest get(String paymentId) {
+        return get(PaymentRequest.parsePaymentId(paymentId));
+    }
+
+
+    public PaymentRequest remove(long paymentId) {
+        long hash = mix(paymentId);
+        return stripeFor(hash).remove(paymentId, hash);
+    }
+
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+
+    // Resolves a transfer to its request and billing period; null if no request has the payment ID
+    public Match match(long paymentId, long atomicAmount, long epochMillis) {
+        long hash = mix(paymentId);
+        return stripeFor(hash).match(paymentId, hash, atomicAmount, epochMillis);
+    }
+
+
+    // The request's amount in piconero (e.g. "1,000.5" XMR is 1000500000000000), or UNKNOWN_AMOUNT
+    static long xmrAtomicUnits(PaymentRequest request) {
+        return "XMR".equals(request.currency()) ? Amounts.parse(request.amount(), Amounts.XMR_SCALE) : UNKNOWN_AMOUNT;
+    }
+
+
+    private Stripe stripeFor(long hash) {
+        // High bits pick the stripe, low bits the slot, so the two stay independent
+        return stripes[stripeShift == 64 ? 0 : (int) (hash >>> stripeShift)];
+    }
+
+
+    private static long mix(long paymentId) {
+        long hash = paymentId * 0x9e3779b97f4a7c15L;
+        return hash ^ (hash >>> 32);
+    }
+
+
+    /**
+     * A transfer resolved to its request: which billing period it pays for and whether the amount covers it.
+     */
+    static final class Match {
+        private final PaymentRequest request;
+        private final int period;
+        private final long expectedAmount;
+        private final long receivedAmount;
+
+
+        private Match(PaymentRequest request, int period, long expectedAmount, long receivedAmount) {
+            this.request = request;
+            this.period = period;
+            this.expectedAmount = expectedAmount;
+            this.receivedAmount = receivedAmount;
+        }
+
+
+        public PaymentRequest request() {
+            return request;
+        }
+
+
+        // The 0-based billing period, or PaymentRequest.NO_PERIOD if the transfer is outside the subscription
+        public int period() {
+            return period;
+        }
+
+
+        public boolean isInPeriod() {
+            return period != PaymentRequest.NO_PERIOD;
+        }
+
+
+        // The request's amount in piconero, or UNKNOWN_AMOUNT if it isn't priced in XMR
+        public long expectedAmount() {
+            return expectedAmount;
+        }
+
+
+        public long receivedAmount() {
+            return receivedAmount;
+        }
+
+
+        // False when the expected amount is unknown (e.g. a USD request needs converting first)
+        public boolean isPaidInFull() {
+            return expectedAmount != UNKNOWN_AMOUNT && receivedAmount >= expectedAmount;
+        }
+
+
+        @Override
+        public String toString() {
+            return request.paymentIdHex() + " period " + period + ": received " + receivedAmount + " of " + expectedAmount;
+        }
+
+
+    }
+
+
+    /**
+     * One linear-probing table; replaced wholesale when it grows, so readers always see a consistent set of arrays.
+     * Payment ID 0 marks an empty slot, so that ID is held outside the arrays.
+     */
+    private static final class Table {
+        private final long[] keys;
+        private final PaymentRequest[] requests;
+        private final long[] amounts;
+        private PaymentRequest zeroRequest;
+        private long zeroAmount;
+        private int size;
+
+
+        private Table(int capacity) {
+            keys = new long[capacity];
+            requests = new PaymentRequest[capacity];
+            amounts = new long[capacity];
+        }
+
+
+        // The slot holding the key, or the empty slot where it would go
+        private int slot(long paymentId, long hash) {
+            int mask = keys.length - 1;
+            int slot = (int) hash & mask;
+            // Bounded, so a reader racing a writer can never loop forever
+            for (int probes = 0; probes < keys.length; probes++) {
+                long key = keys[slot];
+                if (key == paymentId || key == 0) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+
+    }
+
+
+    /**
+     * A table guarded by a StampedLock: writers take the write lock, readers try an optimistic read first.
+     */
+    private static final class Stripe {
+        private static final int ZERO_SLOT = -2;
+
+        private final StampedLock lock = new StampedLock();
+        private Table table;
+
+
+        private Stripe(int expected) {
+            // Keep the load factor at or below one half
+            table = new Table(Math.max(16, Integer.highestOneBit(Math.max(1, expected) * 2 - 1) * 2));
+        }
+
+
+        private PaymentRequest get(long paymentId, long hash) {
+            long stamp = lock.tryOptimisticRead();
+            PaymentRequest request = find(table, paymentId, hash);
+            if (lock.validate(stamp)) {
+                return request;
+            }
+            stamp = lock.readLock();
+            try {
+                return find(table, paymentId, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+
+        private Match match(long paymentId, long hash, long atomicAmount, long epochMillis) {
+            long stamp = lock.tryOptimisticRead();
+            Table current = table;
+            int slot = slotOf(current, paymentId, hash);
+            PaymentRequest request = requestAt(current, slot);
+            long amount = amountAt(current, slot);
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    current = table;
+                    slot = slotOf(current, paymentId, hash);
+                    request = requestAt(current, slot);
+                    amount = amountAt(current, slot);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return request == null ? null : new Match(request, request.billingPeriod(epochMillis), amount, atomicAmount);
+        }
+
+
+        private PaymentRequest put(long paymentId, long hash, PaymentRequest request, long amount) {
+            long stamp = lock.writeLock();
+            try {
+                Table current = table;
+                if (paymentId == 0) {
+                    PaymentRequest previous = current.zeroRequest;
+                    current.zeroRequest = request;
+                    current.zeroAmount = amount;
+                    if (previous == null) {
+                        current.size++;
+                    }
+                    return previous;
+                }
+                if ((current.size + 1) * 2 > current.keys.length) {
+                    current = grow(current);
+                }
+                int slot = current.slot(paymentId, hash);
+                PaymentRequest previous = current.requests[slot];
+                // Write the request before the key, so a matching key always has its request
+                current.requests[slot] = request;
+                current.amounts[slot] = amount;
+                current.keys[slot] = paymentId;
+                if (previous == null) {
+                    current.size++;
+                }
+                return previous;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+
+        private PaymentRequest remove(long paymentId, long hash) {
+            long stamp = lock.writeLock();
+            try {
+                Table current = table;
+                if (paymentId == 0) {
+                    PaymentRequest previous = current.zeroRequest;
+                    if (previous != null) {
+                        current.zeroRequest = null;
+                        current.size--;
+                    }
+                    return previous;
+                }
+                int slot = current.slot(paymentId, hash);
+                if (slot < 0 || current.keys[slot] == 0) {
+                    return null;
+                }
+                PaymentRequest previous = current.requests[slot];
+                deleteSlot(current, slot);
+                current.size--;
+                return previous;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+
+        private int size() {
+            long stamp = lock.readLock();
+            try {
+                return table.size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+
+        // Backward-shift deletion: pulls later entries of the probe run into the gap, so no tombstones are needed
+        private static void deleteSlot(Table table, int slot) {
+            int mask = table.keys.length - 1;
+            int gap = slot;
+            for (int next = (gap + 1) & mask; table.keys[next] != 0; next = (next + 1) & mask) {
+                int home = (int) mix(table.keys[next]) & mask;
+                // Move the entry if its home slot isn't cyclically within (gap, next]
+                if (((next - home) & mask) >= ((next - gap) & mask)) {
+                    table.keys[gap] = table.keys[next];
+                    table.requests[gap] = table.requests[next];
+                    table.amounts[gap] = table.amounts[next];
+                    gap = next;
+                }
+            }
+            table.keys[gap] = 0;
+            table.requests[gap] = null;
+            table.amounts[gap] = 0;
+        }
+
+
+        private Table grow(Table current) {
+            Table grown = new Table(current.keys.length * 2);
+            for (int i = 0; i < current.keys.length; i++) {
+                long key = current.keys[i];
+                if (key != 0) {
+                    int slot = grown.slot(key, mix(key));
+                    grown.keys[slot] = key;
+                    grown.requests[slot] = current.requests[i];
+                    grown.amounts[slot] = current.amounts[i];
+                }
+            }
+            grown.zeroRequest = current.zeroRequest;
+            grown.zeroAmount = current.zeroAmount;
+            grown.size = current.size;
+            table = grown;
+            return grown;
+        }
+
+
+        private static PaymentRequest find(Table table, long paymentId, long hash) {
+            return requestAt(table, slotOf(table, paymentId, hash));
+        }
+
+
+        // The key's slot, ZERO_SLOT for payment ID 0, or -1 if it isn't in the table
+        private static int slotOf(Table table, long paymentId, long hash) {
+            if (paymentId == 0) {
+                return ZERO_SLOT;
+            }
+            int slot = table.slot(paymentId, hash);
+            return slot < 0 || table.keys[slot] != paymentId ? -1 : slot;
+        }
+
+
+        private static PaymentRequest requestAt(Table table, int slot) {
+            return slot == ZERO_SLOT ? table.zeroRequest : slot < 0 ? null : table.requests[slot];
+        }
+
+
+        private static long amountAt(Table table, int slot) {
+            return slot == ZERO_SLOT ? table.zeroAmount : slot < 0 ? UNKNOWN_AMOUNT : table.amounts[slot];
+        }
+
+
+    }
+
+
+}
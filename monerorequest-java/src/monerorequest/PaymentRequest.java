@@ -0,0 +1,361 @@
+package monerorequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+
+/**
+ * Immutable, typed representation of a Monero Payment Request.
+ */
+final class PaymentRequest {
+    // Marks a request whose start_date was left empty
+    public static final long NO_START_DATE = Long.MIN_VALUE;
+    // Returned by billingPeriod for times before the start date or after the last payment
+    public static final int NO_PERIOD = -1;
+    public static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.ISO_8859_1);
+
+    private final String customLabel;
+    private final String sellersWallet;
+    private final String currency;
+    private final String amount;
+    private final long paymentId;
+    private final long startDate;
+    private final int daysPerBillingCycle;
+    private final int numberOfPayments;
+    private final String changeIndicatorUrl;
+
+
+    PaymentRequest(String customLabel,
+                   String sellersWallet,
+                   String currency,
+                   String amount,
+                   long paymentId,
+                   long startDate,
+                   int daysPerBillingCycle,
+                   int numberOfPayments,
+                   String changeIndicatorUrl) {
+        this.customLabel = customLabel;
+        this.sellersWallet = sellersWallet;
+        this.currency = currency;
+        this.amount = amount;
+        this.paymentId = paymentId;
+        this.startDate = startDate;
+        this.daysPerBillingCycle = daysPerBillingCycle;
+        this.numberOfPayments = numberOfPayments;
+        this.changeIndicatorUrl = changeIndicatorUrl;
+    }
+
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+
+    public String customLabel() {
+        return customLabel;
+    }
+
+
+    public String sellersWallet() {
+        return sellersWallet;
+    }
+
+
+    public String currency() {
+        return currency;
+    }
+
+
+    public String amount() {
+        return amount;
+    }
+
+
+    public long paymentId() {
+        return paymentId;
+    }
+
+
+    // Epoch millis, or NO_START_DATE
+    public long startDate() {
+        return startDate;
+    }
+
+
+    public int daysPerBillingCycle() {
+        return daysPerBillingCycle;
+    }
+
+
+    public int numberOfPayments() {
+        return numberOfPayments;
+    }
+
+
+    public String changeIndicatorUrl() {
+        return changeIndicatorUrl;
+    }
+
+
+    public String paymentIdHex() {
+        return formatPaymentId(paymentId);
+    }
+
+
+    public String startDateString() {
+        return startDate == NO_START_DATE ? "" : formatStartDate(startDate);
+    }
+
+
+    // The 0-based billing period a time falls in, or NO_PERIOD; one-time requests and requests without a start date have only period 0
+    public int billingPeriod(long epochMillis) {
+        if (startDate == NO_START_DATE || daysPerBillingCycle == 0) {
+            return startDate == NO_START_DATE || epochMillis >= startDate ? 0 : NO_PERIOD;
+        }
+        if (epochMillis < startDate) {
+            return NO_PERIOD;
+        }
+        long period = (epochMillis - startDate) / (daysPerBillingCycle * MILLIS_PER_DAY);
+        // A numberOfPayments of 0 means the subscription runs until cancelled
+        if ((numberOfPayments > 0 && period >= numberOfPayments) || period > Integer.MAX_VALUE) {
+            return NO_PERIOD;
+        }
+        return (int) period;
+    }
+
+
+    // Epoch millis at which a billing period starts
+    public long periodStart(int period) {
+        if (startDate == NO_START_DATE) {
+            throw new IllegalStateException("Request has no start date");
+        }
+        return startDate + (long) period * daysPerBillingCycle * MILLIS_PER_DAY;
+    }
+
+
+    // Thin adapter for callers that still work with the Map representation
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("custom_label", customLabel);
+        map.put("sellers_wallet", sellersWallet);
+        map.put("currency", currency);
+        map.put("amount", amount);
+        map.put("payment_id", paymentIdHex());
+        map.put("start_date", startDateString());
+        map.put("days_per_billing_cycle", daysPerBillingCycle);
+        map.put("number_of_payments", numberOfPayments);
+        map.put("change_indicator_url", changeIndicatorUrl);
+        return map;
+    }
+
+
+    public static String formatPaymentId(long paymentId) {
+        byte[] hex = new byte[16];
+        for (int i = 15; i >= 0; i--) {
+            hex[i] = HEX_DIGITS[(int) paymentId & 0xf];
+            paymentId >>>= 4;
+        }
+        return new String(hex, StandardCharsets.ISO_8859_1);
+    }
+
+
+    public static long parsePaymentId(String paymentId) {
+        if (!Check.paymentID(paymentId)) {
+            throw new IllegalArgumentException("paymentId is not a string, is not exactly 16 characters long, or contains invalid character(s).");
+        }
+        return Long.parseUnsignedLong(paymentId, 16);
+    }
+
+
+    public static String formatStartDate(long epochMillis) {
+        return Rfc3339.format(epochMillis);
+    }
+
+
+    public static long parseStartDate(String startDate) {
+        long epochMillis = Rfc3339.parse(startDate);
+        if (epochMillis == Rfc3339.INVALID) {
+            throw new IllegalArgumentException("startDate is not a string, or is not in the correct format.");
+        }
+        return epochMillis;
+    }
+
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PaymentRequest)) {
+            return false;
+        }
+        PaymentRequest other = (PaymentRequest) o;
+        return paymentId == other.paymentId
+                && startDate == other.startDate
+                && daysPerBillingCycle == other.daysPerBillingCycle
+                && numberOfPayments == other.numberOfPayments
+                && customLabel.equals(other.customLabel)
+                && sellersWallet.equals(other.sellersWallet)
+                && currency.equals(other.currency)
+                && amount.equals(other.amount)
+                && changeIndicatorUrl.equals(other.changeIndicatorUrl);
+    }
+
+
+    @Override
+    public int hashCode() {
+        int result = Long.hashCode(paymentId);
+        result = 31 * result + Long.hashCode(startDate);
+        result = 31 * result + daysPerBillingCycle;
+        result = 31 * result + numberOfPayments;
+        result = 31 * result + sellersWallet.hashCode();
+        result = 31 * result + amount.hashCode();
+        return result;
+    }
+
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+
+
+    /**
+     * Builds a validated PaymentRequest, filling in a random payment ID and the current time when they are not set.
+     */
+    static final class Builder {
+        private String customLabel = "";
+        private String sellersWallet;
+        private String currency;
+        private String amount;
+        private long paymentId;
+        private boolean hasPaymentId;
+        private long startDate;
+        private boolean hasStartDate;
+        private int daysPerBillingCycle;
+        private int numberOfPayments = 1;
+        private String changeIndicatorUrl = "";
+        private PaymentIdGenerator paymentIdGenerator = PaymentIdGenerator.defaultGenerator();
+
+
+        private Builder() {
+        }
+
+
+        public Builder customLabel(String customLabel) {
+            this.customLabel = customLabel;
+            return this;
+        }
+
+
+        public Builder sellersWallet(String sellersWallet) {
+            this.sellersWallet = sellersWallet;
+            return this;
+        }
+
+
+        public Builder currency(String currency) {
+            this.currency = currency;
+            return this;
+        }
+
+
+        public Builder amount(String amount) {
+            this.amount = amount;
+            return this;
+        }
+
+
+        public Builder paymentId(long paymentId) {
+            this.paymentId = paymentId;
+            this.hasPaymentId = true;
+            return this;
+        }
+
+
+        // A null or empty payment ID means a random one is generated
+        public Builder paymentId(String paymentId) {
+            if (paymentId == null || paymentId.isEmpty()) {
+                this.hasPaymentId = false;
+                return this;
+            }
+            return paymentId(parsePaymentId(paymentId));
+        }
+
+
+        // Generator for the payment ID when none is set (e.g. a guarded one, so IDs never repeat)
+        public Builder paymentIdGenerator(PaymentIdGenerator paymentIdGenerator) {
+            this.paymentIdGenerator = paymentIdGenerator;
+            return this;
+        }
+
+
+        public Builder startDate(long epochMillis) {
+            this.startDate = epochMillis;
+            this.hasStartDate = true;
+            return this;
+        }
+
+
+        // A null or empty start date means the current time is used
+        public Builder startDate(String startDate) {
+            if (startDate == null || startDate.isEmpty()) {
+                this.hasStartDate = false;
+                return this;
+            }
+            return startDate(parseStartDate(startDate));
+        }
+
+
+        public Builder daysPerBillingCycle(int daysPerBillingCycle) {
+            this.daysPerBillingCycle = daysPerBillingCycle;
+            return this;
+        }
+
+
+        public Builder numberOfPayments(int numberOfPayments) {
+            this.numberOfPayments = numberOfPayments;
+            return this;
+        }
+
+
+        public Builder changeIndicatorUrl(String changeIndicatorUrl) {
+            this.changeIndicatorUrl = changeIndicatorUrl;
+            return this;
+        }
+
+
+        public PaymentRequest build() {
+            return build(wallet -> Check.wallet(wallet, true, true, false), Check::changeIndicatorUrl);
+        }
+
+
+        // Lets batch callers share (and memoize) the more expensive wallet and URL checks across many builds
+        PaymentRequest build(Predicate<String> walletCheck, Predicate<String> changeIndicatorUrlCheck) {
+            // Make sure all fields are valid (same rules as MoneroPaymentRequest.create)
+            long validateStart = Metrics.start();
+            if (!Check.name(customLabel)) {throw new IllegalArgumentException("customLabel is not a string.");}
+            if (!walletCheck.test(sellersWallet)) {throw new IllegalArgumentException("sellersWallet is not valid");}
+            if (!Check.currency(currency)) {throw new IllegalArgumentException("Currency is not a string, or is not supported.");}
+            if (!Check.amount(amount)) {throw new IllegalArgumentException("amount is not a string, or invalid characters in amount. Amount can only contain ',', '.', and numbers.");}
+            if (daysPerBillingCycle < 0) {Metrics.validationFailure(Validator.Field.DAYS_PER_BILLING_CYCLE, Check.Reason.NEGATIVE); throw new IllegalArgumentException("billingCycle is not an integer, or the value set was lower than 0.");}
+            if (numberOfPayments < 0) {Metrics.validationFailure(Validator.Field.NUMBER_OF_PAYMENTS, Check.Reason.NEGATIVE); throw new IllegalArgumentException("numberOfPayments is not an integer, or is less than 1.");}
+            if (!changeIndicatorUrlCheck.test(changeIndicatorUrl)) {throw new IllegalArgumentException("changeIndicatorUrl is not a string, or is not a valid URL.");}
+            Metrics.stop(Metrics.Stage.VALIDATE, validateStart);
+
+            long finalPaymentId = hasPaymentId ? paymentId : paymentIdGenerator.nextId();
+            long finalStartDate = hasStartDate ? startDate : System.currentTimeMillis();
+
+            return new PaymentRequest(customLabel, sellersWallet, currency, amount, finalPaymentId, finalStartDate,
+                    daysPerBillingCycle, numberOfPayments, changeIndicatorUrl);
+        }
+
+
+    }
+
+
+}
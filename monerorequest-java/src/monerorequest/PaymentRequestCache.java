@@ -0,0 +1,169 @@
+package monerorequest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Optional, thread-safe, bounded LRU cache of decoded payment requests, keyed by the monero-request string.
+ * Split into independently locked segments so concurrent readers rarely contend; cached requests are immutable.
+ */
+final class PaymentRequestCache {
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+
+    // Holds up to maxSize requests, split over a number of segments based on the number of cores
+    PaymentRequestCache(int maxSize) {
+        this(maxSize, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+
+    PaymentRequestCache(int maxSize, int concurrency) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be greater than 0");
+        }
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency must be greater than 0");
+        }
+
+        // A power of two segments, each holding at least one entry
+        int segmentCount = Integer.highestOneBit(Math.min(concurrency, maxSize));
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            // Spread any remainder over the first segments so the capacities add up to maxSize
+            int capacity = maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0);
+            segments[i] = new Segment(capacity, evictions);
+        }
+        segmentMask = segmentCount - 1;
+    }
+
+
+    // Same as MoneroPaymentRequest.readRequest, but decodes each distinct string only once while it stays cached
+    public PaymentRequest readRequest(String paymentRequest) {
+        Segment segment = segmentFor(paymentRequest);
+        PaymentRequest request;
+        synchronized (segment) {
+            request = segment.get(paymentRequest);
+        }
+        if (request != null) {
+            hits.increment();
+            return request;
+        }
+
+        // Decode outside the lock; racing threads may both decode a new string, which is harmless
+        misses.increment();
+        request = MoneroPaymentRequest.readRequest(paymentRequest);
+        synchronized (segment) {
+            segment.put(paymentRequest, request);
+        }
+        return request;
+    }
+
+
+    // Same as MoneroPaymentRequest.read; the map is a fresh copy, so changing it doesn't affect the cache
+    public Map<String, Object> read(String paymentRequest) {
+        return readRequest(paymentRequest).toMap();
+    }
+
+
+    public void invalidate(String paymentRequest) {
+        Segment segment = segmentFor(paymentRequest);
+        synchronized (segment) {
+            segment.remove(paymentRequest);
+        }
+    }
+
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+
+    public double hitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+
+    @Override
+    public String toString() {
+        return String.format("%d cached, %d hits, %d misses, %d evictions (%.1f%% hit rate)",
+                size(), hitCount(), missCount(), evictionCount(), hitRate() * 100);
+    }
+
+
+    private Segment segmentFor(String paymentRequest) {
+        if (paymentRequest == null) {
+            throw new IllegalArgumentException("Invalid input");
+        }
+        int hash = paymentRequest.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & segmentMask];
+    }
+
+
+    /**
+     * One access-ordered LRU segment; callers synchronize on it. Never serialized.
+     */
+    @SuppressWarnings("serial")
+    private static final class Segment extends LinkedHashMap<String, PaymentRequest> {
+        private final int capacity;
+        private final LongAdder evictions;
+
+
+        private Segment(int capacity, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PaymentRequest> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+
+
+    }
+
+
+}
@@ -0,0 +1,249 @@
+package monerorequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.StringJoiner;
+
+
+/**
+ * The payment request fields a caller needs, for decoding just those with Decode.project.
+ * Decoding stops inflating and tokenizing once every projected field is read, and skips the rest without creating Strings.
+ */
+final class Projection {
+    private static final Validator.Field[] FIELDS = Validator.Field.values();
+    // JSON keys as UTF-8, indexed by field ordinal
+    private static final byte[][] KEYS = new byte[FIELDS.length][];
+
+    static {
+        for (Validator.Field field : FIELDS) {
+            KEYS[field.ordinal()] = field.key().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private final int mask;
+    private final int size;
+
+
+    private Projection(int mask) {
+        this.mask = mask;
+        this.size = Integer.bitCount(mask);
+    }
+
+
+    public static Projection of(Validator.Field... fields) {
+        if (fields.length == 0) {
+            throw new IllegalArgumentException("A projection needs at least one field");
+        }
+        int mask = 0;
+        for (Validator.Field field : fields) {
+            mask |= 1 << field.ordinal();
+        }
+        return new Projection(mask);
+    }
+
+
+    // Fields named by their JSON keys, e.g. of("sellers_wallet", "payment_id", "amount")
+    public static Projection of(String... keys) {
+        Validator.Field[] fields = new Validator.Field[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            fields[i] = field(keys[i]);
+        }
+        return of(fields);
+    }
+
+
+    public boolean includes(Validator.Field field) {
+        return (mask & 1 << field.ordinal()) != 0;
+    }
+
+
+    public int size() {
+        return size;
+    }
+
+
+    // JSON keys as UTF-8, indexed by field ordinal (the candidates for JsonTokenizer.nextName)
+    static byte[][] keys() {
+        return KEYS;
+    }
+
+
+    static Validator.Field field(int index) {
+        return FIELDS[index];
+    }
+
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ", "Projection[", "]");
+        for (Validator.Field field : FIELDS) {
+            if (includes(field)) {
+                joiner.add(field.key());
+            }
+        }
+        return joiner.toString();
+    }
+
+
+    private static Validator.Field field(String key) {
+        for (Validator.Field field : FIELDS) {
+            if (field.key().equals(key)) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("Unknown payment request field: " + key);
+    }
+
+
+    /**
+     * The projected fields of one decoded request; fields that weren't projected (or were missing) keep their defaults.
+     * Reusable: Decode.project clears it first, so a router can keep one per thread.
+     */
+    static final class Result {
+        private int found;
+        private String customLabel;
+        private String sellersWallet;
+        private String currency;
+        private String amount;
+        private long paymentId;
+        private long startDate;
+        private int daysPerBillingCycle;
+        private int numberOfPayments;
+        private String changeIndicatorUrl;
+
+
+        Result() {
+            clear();
+        }
+
+
+        // True if the field was projected and present in the request
+        public boolean has(Validator.Field field) {
+            return (found & 1 << field.ordinal()) != 0;
+        }
+
+
+        public String customLabel() {
+            return customLabel;
+        }
+
+
+        public String sellersWallet() {
+            return sellersWallet;
+        }
+
+
+        public String currency() {
+            return currency;
+        }
+
+
+        public String amount() {
+            return amount;
+        }
+
+
+        public long paymentId() {
+            return paymentId;
+        }
+
+
+        // Epoch millis, or PaymentRequest.NO_START_DATE
+        public long startDate() {
+            return startDate;
+        }
+
+
+        public int daysPerBillingCycle() {
+            return daysPerBillingCycle;
+        }
+
+
+        public int numberOfPayments() {
+            return numberOfPayments;
+        }
+
+
+        public String changeIndicatorUrl() {
+            return changeIndicatorUrl;
+        }
+
+
+        // Same defaults as a fully decoded request with the field missing
+        void clear() {
+            found = 0;
+            customLabel = "";
+            sellersWallet = "";
+            currency = "";
+            amount = "";
+            paymentId = 0;
+            startDate = PaymentRequest.NO_START_DATE;
+            daysPerBillingCycle = 0;
+            numberOfPayments = 0;
+            changeIndicatorUrl = "";
+        }
+
+
+        // Reads the field's value from the tokenizer, which is positioned just after its name
+        void read(Validator.Field field, JsonTokenizer tokenizer) {
+            switch (field) {
+                case CUSTOM_LABEL: customLabel = tokenizer.nextString(); break;
+                case SELLERS_WALLET: sellersWallet = tokenizer.nextString(); break;
+                case CURRENCY: currency = tokenizer.nextString(); break;
+                case AMOUNT: amount = tokenizer.nextString(); break;
+                case PAYMENT_ID: paymentId = PaymentRequest.parsePaymentId(tokenizer.nextString()); break;
+                case START_DATE:
+                    String startDateString = tokenizer.nextString();
+                    startDate = startDateString.isEmpty() ? PaymentRequest.NO_START_DATE : PaymentRequest.parseStartDate(startDateString);
+                    break;
+                case DAYS_PER_BILLING_CYCLE: daysPerBillingCycle = Decode.nextInteger(tokenizer); break;
+                case NUMBER_OF_PAYMENTS: numberOfPayments = Decode.nextInteger(tokenizer); break;
+                case CHANGE_INDICATOR_URL: changeIndicatorUrl = tokenizer.nextString(); break;
+                default: throw new IllegalStateException("Unknown field: " + field);
+            }
+            found |= 1 << field.ordinal();
+        }
+
+
+        // Copies the projected fields of a fully decoded request (for formats with no JSON to skip through)
+        void read(Projection projection, PaymentRequest request) {
+            for (Validator.Field field : FIELDS) {
+                if (!projection.includes(field)) {
+                    continue;
+                }
+                switch (field) {
+                    case CUSTOM_LABEL: customLabel = request.customLabel(); break;
+                    case SELLERS_WALLET: sellersWallet = request.sellersWallet(); break;
+                    case CURRENCY: currency = request.currency(); break;
+                    case AMOUNT: amount = request.amount(); break;
+                    case PAYMENT_ID: paymentId = request.paymentId(); break;
+                    case START_DATE: startDate = request.startDate(); break;
+                    case DAYS_PER_BILLING_CYCLE: daysPerBillingCycle = request.daysPerBillingCycle(); break;
+                    case NUMBER_OF_PAYMENTS: numberOfPayments = request.numberOfPayments(); break;
+                    case CHANGE_INDICATOR_URL: changeIndicatorUrl = request.changeIndicatorUrl(); break;
+                    default: throw new IllegalStateException("Unknown field: " + field);
+                }
+                found |= 1 << field.ordinal();
+            }
+        }
+
+
+        @Override
+        public String toString() {
+            StringJoiner joiner = new StringJoiner(", ", "{", "}");
+            if (has(Validator.Field.CUSTOM_LABEL)) {joiner.add("custom_label=" + customLabel);}
+            if (has(Validator.Field.SELLERS_WALLET)) {joiner.add("sellers_wallet=" + sellersWallet);}
+            if (has(Validator.Field.CURRENCY)) {joiner.add("currency=" + currency);}
+            if (has(Validator.Field.AMOUNT)) {joiner.add("amount=" + amount);}
+            if (has(Validator.Field.PAYMENT_ID)) {joiner.add("payment_id=" + PaymentRequest.formatPaymentId(paymentId));}
+            if (has(Validator.Field.START_DATE)) {joiner.add("start_date=" + (startDate == PaymentRequest.NO_START_DATE ? "" : Rfc3339.format(startDate)));}
+            if (has(Validator.Field.DAYS_PER_BILLING_CYCLE)) {joiner.add("days_per_billing_cycle=" + daysPerBillingCycle);}
+            if (has(Validator.Field.NUMBER_OF_PAYMENTS)) {joiner.add("number_of_payments=" + numberOfPayments);}
+            if (has(Validator.Field.CHANGE_INDICATOR_URL)) {joiner.add("change_indicator_url=" + changeIndicatorUrl);}
+            return joiner.toString();
+        }
+
+
+    }
+
+
+}
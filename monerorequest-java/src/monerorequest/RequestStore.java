@@ -0,0 +1,807 @@
+package monerorequest;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+
+/**
+ * Embedded, append-only store of issued monero-request strings: a write-ahead log of the encoded requests plus a
+ * memory-mapped index from payment ID and wallet to log offset. Concurrent appends share one fsync (group commit).
+ * On startup the index is trusted only after a clean close; otherwise the log is verified, a torn tail is cut off
+ * and the index is rebuilt from it. Thread-safe.
+ */
+final class RequestStore implements Closeable {
+    private static final String LOG_FILE = "requests.log";
+    private static final String INDEX_FILE = "requests.idx";
+    // "MRLOG", format 1
+    private static final long LOG_MAGIC = 0x4d524c4f47000001L;
+    private static final int LOG_HEADER_SIZE = 16;
+    // Length, CRC, payment ID, wallet hash, offset of the wallet's previous record
+    private static final int RECORD_HEADER_SIZE = 32;
+    private static final int MAX_REQUEST_LENGTH = 1 << 20;
+    private static final int SCAN_BUFFER_SIZE = 1 << 16;
+    private static final long NO_OFFSET = -1;
+
+    private static final Projection WALLET_FIELD = Projection.of(Validator.Field.SELLERS_WALLET);
+
+    private final Path directory;
+    private final FileChannel log;
+    private final boolean fsync;
+
+    // Appends are serialized on the write lock; the index is only changed while holding it
+    private final Object writeLock = new Object();
+    private final CRC32 writeCrc = new CRC32();
+    private ByteBuffer writeBuffer = ByteBuffer.allocateDirect(4096);
+    private volatile long written;
+    private volatile boolean closed;
+
+    // Group commit: one appender syncs everything written so far while the others wait for it
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition synced = syncLock.newCondition();
+    private long durable;
+    private boolean syncing;
+
+    // Readers use optimistic reads, writers (and index growth) the write lock
+    private final StampedLock indexLock = new StampedLock();
+    private Index index;
+
+    private final ThreadLocal<ByteBuffer> readBuffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(1024));
+
+
+    // Opens (or creates) the store in the directory, fsyncing every commit
+    RequestStore(Path directory) throws IOException {
+        this(directory, true);
+    }
+
+
+    // Without fsync, appends survive a process crash but not a power failure
+    RequestStore(Path directory, boolean fsync) throws IOException {
+        this.directory = directory;
+        this.fsync = fsync;
+        Files.createDirectories(directory);
+        this.log = FileChannel.open(directory.resolve(LOG_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            recover();
+        } catch (IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+    }
+
+
+    // Decodes, validates and stores an encoded request, returning once it is durable
+    public long append(String moneroPaymentRequest) throws IOException {
+        PaymentRequest request = validated(moneroPaymentRequest);
+        return append(moneroPaymentRequest, request.paymentId(), request.sellersWallet());
+    }
+
+
+    // Encodes and stores a request, returning the offset of its record once it is durable
+    public long append(PaymentRequest request) throws IOException {
+        return append(MoneroPaymentRequest.create(request), request.paymentId(), request.sellersWallet());
+    }
+
+
+    // Validates and stores a batch with a single commit, returning each record's offset; nothing is stored if any is invalid
+    public long[] appendAll(List<String> moneroPaymentRequests) throws IOException {
+        long[] paymentIds = new long[moneroPaymentRequests.size()];
+        String[] wallets = new String[paymentIds.length];
+        for (int i = 0; i < paymentIds.length; i++) {
+            PaymentRequest request = validated(moneroPaymentRequests.get(i));
+            paymentIds[i] = request.paymentId();
+            wallets[i] = request.sellersWallet();
+        }
+        long[] offsets = new long[paymentIds.length];
+        synchronized (writeLock) {
+            ensureOpen();
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = write(moneroPaymentRequests.get(i), paymentIds[i], wallets[i]);
+            }
+        }
+        commit(written);
+        return offsets;
+    }
+
+
+    // The latest request stored with the payment ID, or null
+    public String get(long paymentId) throws IOException {
+        long offset = lookup(Index.PAYMENT_IDS, paymentId);
+        if (offset == NO_OFFSET) {
+            return null;
+        }
+        Record record = read(offset);
+        if (record.paymentId != paymentId) {
+            throw new IOException("Index entry for payment ID " + PaymentRequest.formatPaymentId(paymentId) + " points at another record");
+        }
+        return record.request;
+    }
+
+
+    public String get(String paymentId) throws IOException {
+        return get(PaymentRequest.parsePaymentId(paymentId));
+    }
+
+
+    public PaymentRequest getRequest(long paymentId) throws IOException {
+        String request = get(paymentId);
+        return request == null ? null : Decode.paymentRequest(request);
+    }
+
+
+    // Every request stored for the wallet, newest first (follows the wallet's chain of records back through the log)
+    public List<String> byWallet(String wallet) throws IOException {
+        long hash = walletHash(wallet);
+        List<String> requests = new ArrayList<>();
+        Projection.Result fields = new Projection.Result();
+        for (long offset = lookup(Index.WALLETS, hash); offset != NO_OFFSET; ) {
+            Record record = read(offset);
+            if (record.walletHash != hash) {
+                throw new IOException("Wallet chain is broken at offset " + offset);
+            }
+            // Two wallets could share a hash, so check the wallet itself
+            if (wallet.equals(Decode.project(record.request, WALLET_FIELD, fields).sellersWallet())) {
+                requests.add(record.request);
+            }
+            offset = record.previous;
+        }
+        return requests;
+    }
+
+
+    // Visits every stored request in append order (those appended during the walk may or may not be included)
+    public void forEach(Consumer<String> action) throws IOException {
+        Scanner scanner = new Scanner(log, written);
+        while (scanner.next()) {
+            action.accept(scanner.request());
+        }
+    }
+
+
+    // Number of records (a payment ID stored twice counts twice)
+    public long size() {
+        long stamp = indexLock.readLock();
+        try {
+            return index.records;
+        } finally {
+            indexLock.unlockRead(stamp);
+        }
+    }
+
+
+    public int paymentIdCount() {
+        long stamp = indexLock.readLock();
+        try {
+            return index.paymentIds;
+        } finally {
+            indexLock.unlockRead(stamp);
+        }
+    }
+
+
+    // Log length in bytes
+    public long logLength() {
+        return written;
+    }
+
+
+    public Path directory() {
+        return directory;
+    }
+
+
+    // Syncs the log and marks the index clean, so the next open can skip recovery
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                log.force(false);
+                // Appenders still in commit() then see their records as durable instead of syncing a closed channel
+                syncLock.lock();
+                try {
+                    durable = Math.max(durable, written);
+                    synced.signalAll();
+                } finally {
+                    syncLock.unlock();
+                }
+                long stamp = indexLock.writeLock();
+                try {
+                    index.markClean(written);
+                    index.close();
+                } finally {
+                    indexLock.unlockWrite(stamp);
+                }
+            } finally {
+                log.close();
+            }
+        }
+    }
+
+
+    // Decodes the whole request so the audit log never holds one MoneroPaymentRequest.create would have refused
+    private static PaymentRequest validated(String moneroPaymentRequest) {
+        PaymentRequest request = Decode.paymentRequest(moneroPaymentRequest);
+        Validator validator = new Validator();
+        Check.Reason reason = validator.validate(request);
+        if (reason != Check.Reason.VALID) {
+            throw new IllegalArgumentException(validator.failedField().key() + " is not valid (" + reason + ")");
+        }
+        return request;
+    }
+
+
+    private long append(String moneroPaymentRequest, long paymentId, String wallet) throws IOException {
+        long offset;
+        synchronized (writeLock) {
+            ensureOpen();
+            offset = write(moneroPaymentRequest, paymentId, wallet);
+        }
+        commit(written);
+        return offset;
+    }
+
+
+    // Writes one record at the end of the log and indexes it; called with the write lock held
+    private long write(String request, long paymentId, String wallet) throws IOException {
+        int length = request.length();
+        if (length > MAX_REQUEST_LENGTH) {
+            throw new IllegalArgumentException("moneroPaymentRequest is longer than " + MAX_REQUEST_LENGTH + " characters");
+        }
+        long offset = written;
+        long hash = walletHash(wallet);
+        long previous = index.get(Index.WALLETS, hash);
+
+        int size = RECORD_HEADER_SIZE + length;
+        if (writeBuffer.capacity() < size) {
+            writeBuffer = ByteBuffer.allocateDirect(Math.max(size, writeBuffer.capacity() * 2));
+        }
+        ByteBuffer buffer = writeBuffer;
+        buffer.clear();
+        buffer.putInt(length).putInt(0).putLong(paymentId).putLong(hash).putLong(previous);
+        for (int i = 0; i < length; i++) {
+            char c = request.charAt(i);
+            if (c >= 0x80) {
+                throw new IllegalArgumentException("moneroPaymentRequest is not ASCII");
+            }
+            buffer.put((byte) c);
+        }
+        buffer.flip();
+        writeCrc.reset();
+        writeCrc.update(buffer.duplicate().position(8));
+        buffer.putInt(4, (int) writeCrc.getValue());
+
+        // Make room in the index before writing, so a failed grow leaves no record in the log that isn't indexed
+        if (index.needsGrow()) {
+            long stamp = indexLock.writeLock();
+            try {
+                index = index.grow(directory.resolve(INDEX_FILE));
+            } finally {
+                indexLock.unlockWrite(stamp);
+            }
+        }
+
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            position += log.write(buffer, position);
+        }
+        written = position;
+
+        // Indexed only once written, so readers never see an offset past the end of the log
+        long stamp = indexLock.writeLock();
+        try {
+            index.put(Index.PAYMENT_IDS, paymentId, offset);
+            index.put(Index.WALLETS, hash, offset);
+            index.records++;
+        } finally {
+            indexLock.unlockWrite(stamp);
+        }
+        return offset;
+    }
+
+
+    // Returns once everything up to the position is durable; whoever finds no sync running starts one for everyone
+    private void commit(long upTo) throws IOException {
+        syncLock.lock();
+        try {
+            while (durable < upTo) {
+                if (syncing) {
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+                syncing = true;
+                long target = written;
+                IOException failure = null;
+                syncLock.unlock();
+                try {
+                    if (fsync) {
+                        log.force(false);
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                } finally {
+                    syncLock.lock();
+                    syncing = false;
+                    if (failure == null) {
+                        durable = Math.max(durable, target);
+                    }
+                    synced.signalAll();
+                }
+                // A sync that failed because close() shut the channel is fine if close() already forced the records
+                if (failure != null && durable < upTo) {
+                    throw failure;
+                }
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+
+    private long lookup(int table, long key) {
+        long stamp = indexLock.tryOptimisticRead();
+        long offset = index.get(table, key);
+        if (indexLock.validate(stamp)) {
+            return offset;
+        }
+        stamp = indexLock.readLock();
+        try {
+            return index.get(table, key);
+        } finally {
+            indexLock.unlockRead(stamp);
+        }
+    }
+
+
+    // Reads and verifies the record at the offset, usually with a single read
+    private Record read(long offset) throws IOException {
+        ByteBuffer buffer = readBuffers.get();
+        buffer.clear();
+        readFully(buffer, offset, RECORD_HEADER_SIZE);
+        int length = buffer.getInt(0);
+        if (length < 0 || length > MAX_REQUEST_LENGTH) {
+            throw new IOException("Corrupt record at offset " + offset);
+        }
+        int size = RECORD_HEADER_SIZE + length;
+        if (buffer.capacity() < size) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2));
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+            readBuffers.set(buffer);
+        }
+        if (buffer.position() < size) {
+            buffer.limit(buffer.capacity());
+            readFully(buffer, offset + buffer.position(), size - buffer.position());
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 8, size - 8);
+        if ((int) crc.getValue() != buffer.getInt(4)) {
+            throw new IOException("Corrupt record at offset " + offset);
+        }
+        return new Record(buffer.getLong(8), buffer.getLong(16), buffer.getLong(24),
+                new String(buffer.array(), RECORD_HEADER_SIZE, length, StandardCharsets.ISO_8859_1));
+    }
+
+
+    // Reads at least minBytes from the position onwards (more if the buffer has room)
+    private void readFully(ByteBuffer buffer, long position, int minBytes) throws IOException {
+        int target = buffer.position() + minBytes;
+        while (buffer.position() < target) {
+            int n = log.read(buffer, position);
+            if (n < 0) {
+                throw new EOFException("Record runs past the end of the log");
+            }
+            position += n;
+        }
+    }
+
+
+    private void recover() throws IOException {
+        long size = log.size();
+        if (size < LOG_HEADER_SIZE) {
+            // New, or created but torn before its header was written
+            ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE).putLong(LOG_MAGIC).putLong(0).flip();
+            log.truncate(0);
+            while (header.hasRemaining()) {
+                log.write(header, header.position());
+            }
+            log.force(true);
+            size = LOG_HEADER_SIZE;
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            while (header.hasRemaining() && log.read(header, header.position()) > 0) {
+                // Read the magic number
+            }
+            if (header.getLong(0) != LOG_MAGIC) {
+                throw new IOException(directory.resolve(LOG_FILE) + " is not a request log");
+            }
+        }
+
+        Path indexFile = directory.resolve(INDEX_FILE);
+        Index existing = Index.open(indexFile);
+        if (existing != null && existing.isClean() && existing.logLength() == size) {
+            index = existing;
+        } else {
+            if (existing != null) {
+                existing.close();
+            }
+            index = Index.create(indexFile, Index.MIN_CAPACITY);
+            size = rebuild(size);
+        }
+        // Until the next clean close, a crash means the index has to be rebuilt
+        index.markDirty();
+        written = size;
+        durable = size;
+    }
+
+
+    // Re-indexes every valid record and cuts the log off after the last one, returning the new length
+    private long rebuild(long size) throws IOException {
+        Scanner scanner = new Scanner(log, size);
+        while (scanner.next()) {
+            if (index.needsGrow()) {
+                index = index.grow(directory.resolve(INDEX_FILE));
+            }
+            index.put(Index.PAYMENT_IDS, scanner.paymentId, scanner.offset);
+            index.put(Index.WALLETS, scanner.walletHash, scanner.offset);
+            index.records++;
+        }
+        long validEnd = scanner.position;
+        if (validEnd < size) {
+            // A torn or corrupt tail: everything after the last valid record is discarded
+            log.truncate(validEnd);
+            log.force(true);
+        }
+        return validEnd;
+    }
+
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Store is closed");
+        }
+    }
+
+
+    // 64-bit FNV-1a of the wallet address (stable across runs, since it is persisted)
+    private static long walletHash(String wallet) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < wallet.length(); i++) {
+            hash ^= wallet.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+
+    private static long mix(long key) {
+        long hash = key * 0x9e3779b97f4a7c15L;
+        return hash ^ (hash >>> 32);
+    }
+
+
+    /**
+     * One record read from the log.
+     */
+    private static final class Record {
+        private final long paymentId;
+        private final long walletHash;
+        private final long previous;
+        private final String request;
+
+
+        private Record(long paymentId, long walletHash, long previous, String request) {
+            this.paymentId = paymentId;
+            this.walletHash = walletHash;
+            this.previous = previous;
+            this.request = request;
+        }
+
+
+    }
+
+
+    /**
+     * Sequential, buffered walk over the log's records that stops at the first incomplete or corrupt one.
+     */
+    private static final class Scanner {
+        private final FileChannel log;
+        private final long end;
+        private ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        private final CRC32 crc = new CRC32();
+        // File position of the buffer's first byte
+        private long bufferStart = LOG_HEADER_SIZE;
+        // End of the last valid record
+        private long position = LOG_HEADER_SIZE;
+        private long offset;
+        private long paymentId;
+        private long walletHash;
+        private int length;
+        private byte[] request = new byte[1024];
+
+
+        private Scanner(FileChannel log, long end) {
+            this.log = log;
+            this.end = end;
+            buffer.limit(0);
+        }
+
+
+        private boolean next() throws IOException {
+            if (!ensure(RECORD_HEADER_SIZE)) {
+                return false;
+            }
+            int start = (int) (position - bufferStart);
+            int recordLength = buffer.getInt(start);
+            if (recordLength < 0 || recordLength > MAX_REQUEST_LENGTH || !ensure(RECORD_HEADER_SIZE + recordLength)) {
+                return false;
+            }
+            start = (int) (position - bufferStart);
+            crc.reset();
+            crc.update(buffer.array(), start + 8, RECORD_HEADER_SIZE - 8 + recordLength);
+            if ((int) crc.getValue() != buffer.getInt(start + 4)) {
+                return false;
+            }
+
+            offset = position;
+            length = recordLength;
+            paymentId = buffer.getLong(start + 8);
+            walletHash = buffer.getLong(start + 16);
+            if (request.length < length) {
+                request = new byte[Math.max(length, request.length * 2)];
+            }
+            System.arraycopy(buffer.array(), start + RECORD_HEADER_SIZE, request, 0, length);
+            position += RECORD_HEADER_SIZE + length;
+            return true;
+        }
+
+
+        private String request() {
+            return new String(request, 0, length, StandardCharsets.ISO_8859_1);
+        }
+
+
+        // Makes sure the buffer holds the next count bytes after the position, returning false if the log ends first
+        private boolean ensure(int count) throws IOException {
+            if (position + count > end) {
+                return false;
+            }
+            int start = (int) (position - bufferStart);
+            if (buffer.limit() - start >= count) {
+                return true;
+            }
+            // Move the unread bytes to the front (of a bigger buffer if the record needs one), then read more after them
+            buffer.position(start);
+            buffer.compact();
+            if (buffer.capacity() < count) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(count, buffer.capacity() * 2));
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+            bufferStart = position;
+            while (buffer.position() < count) {
+                if (log.read(buffer, bufferStart + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            return buffer.limit() >= count;
+        }
+
+
+    }
+
+
+    /**
+     * Memory-mapped index file: a header and two linear-probing tables of (key, offset + 1) slots, one keyed by
+     * payment ID and one by wallet hash, each holding the latest record's offset. An offset of 0 marks an empty slot.
+     */
+    private static final class Index {
+        private static final int PAYMENT_IDS = 0;
+        private static final int WALLETS = 1;
+        private static final int MIN_CAPACITY = 1024;
+        // Two tables of 16-byte slots must fit in one mapping
+        private static final int MAX_CAPACITY = 1 << 25;
+
+        // "MRIDX", format 1
+        private static final long MAGIC = 0x4d52494458000001L;
+        private static final int HEADER_SIZE = 64;
+        private static final int SLOT_SIZE = 16;
+        private static final int CLEAN_AT = 8;
+        private static final int CAPACITY_AT = 12;
+        private static final int PAYMENT_IDS_AT = 16;
+        private static final int WALLETS_AT = 20;
+        private static final int RECORDS_AT = 24;
+        private static final int LOG_LENGTH_AT = 32;
+
+        private final FileChannel channel;
+        private final MappedByteBuffer map;
+        private final int capacity;
+        private int paymentIds;
+        private int wallets;
+        private long records;
+
+
+        private Index(FileChannel channel, MappedByteBuffer map, int capacity) {
+            this.channel = channel;
+            this.map = map;
+            this.capacity = capacity;
+        }
+
+
+        private static Index create(Path file, int capacity) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(capacity));
+            map.putLong(0, MAGIC);
+            map.putInt(CAPACITY_AT, capacity);
+            return new Index(channel, map, capacity);
+        }
+
+
+        // The index in the file, or null if it is missing or not a valid index
+        private static Index open(Path file) throws IOException {
+            if (!Files.isRegularFile(file) || Files.size(file) < HEADER_SIZE) {
+                return null;
+            }
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+                // Read the header
+            }
+            int capacity = header.getInt(CAPACITY_AT);
+            if (header.getLong(0) != MAGIC || capacity < MIN_CAPACITY || capacity > MAX_CAPACITY
+                    || Integer.bitCount(capacity) != 1 || channel.size() != fileSize(capacity)) {
+                channel.close();
+                return null;
+            }
+            Index index = new Index(channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(capacity)), capacity);
+            index.paymentIds = header.getInt(PAYMENT_IDS_AT);
+            index.wallets = header.getInt(WALLETS_AT);
+            index.records = header.getLong(RECORDS_AT);
+            return index;
+        }
+
+
+        private static long fileSize(int capacity) {
+            return HEADER_SIZE + 2L * capacity * SLOT_SIZE;
+        }
+
+
+        private boolean isClean() {
+            return map.getInt(CLEAN_AT) != 0;
+        }
+
+
+        private long logLength() {
+            return map.getLong(LOG_LENGTH_AT);
+        }
+
+
+        private void markDirty() {
+            map.putInt(CLEAN_AT, 0);
+            map.force();
+        }
+
+
+        private void markClean(long logLength) {
+            map.putInt(PAYMENT_IDS_AT, paymentIds);
+            map.putInt(WALLETS_AT, wallets);
+            map.putLong(RECORDS_AT, records);
+            map.putLong(LOG_LENGTH_AT, logLength);
+            map.force();
+            map.putInt(CLEAN_AT, 1);
+            map.force();
+        }
+
+
+        // The offset stored for the key, or NO_OFFSET
+        private long get(int table, long key) {
+            int mask = capacity - 1;
+            int slot = (int) mix(key) & mask;
+            // Bounded, so a reader racing a writer can never loop forever
+            for (int probes = 0; probes < capacity; probes++) {
+                int at = slotAt(table, slot);
+                long stored = map.getLong(at + 8);
+                if (stored == 0) {
+                    return NO_OFFSET;
+                }
+                if (map.getLong(at) == key) {
+                    return stored - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return NO_OFFSET;
+        }
+
+
+        private void put(int table, long key, long offset) {
+            int mask = capacity - 1;
+            for (int slot = (int) mix(key) & mask; ; slot = (slot + 1) & mask) {
+                int at = slotAt(table, slot);
+                long stored = map.getLong(at + 8);
+                if (stored == 0) {
+                    // Write the key before the offset, so a non-empty slot always has its key
+                    map.putLong(at, key);
+                    map.putLong(at + 8, offset + 1);
+                    if (table == PAYMENT_IDS) {
+                        paymentIds++;
+                    } else {
+                        wallets++;
+                    }
+                    return;
+                }
+                if (map.getLong(at) == key) {
+                    map.putLong(at + 8, offset + 1);
+                    return;
+                }
+            }
+        }
+
+
+        // Keeps each table's load factor at or below one half
+        private boolean needsGrow() {
+            return (Math.max(paymentIds, wallets) + 1) * 2 > capacity;
+        }
+
+
+        // Rehashes into a file twice the size, then swaps it in place of this one
+        private Index grow(Path file) throws IOException {
+            if (capacity >= MAX_CAPACITY) {
+                throw new IllegalStateException("Index is full");
+            }
+            Path next = file.resolveSibling(file.getFileName() + ".tmp");
+            Index grown = create(next, capacity * 2);
+            for (int table = PAYMENT_IDS; table <= WALLETS; table++) {
+                for (int slot = 0; slot < capacity; slot++) {
+                    int at = slotAt(table, slot);
+                    long stored = map.getLong(at + 8);
+                    if (stored != 0) {
+                        grown.put(table, map.getLong(at), stored - 1);
+                    }
+                }
+            }
+            grown.records = records;
+            Files.move(next, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            // The old mapping is released when it is garbage collected
+            close();
+            return grown;
+        }
+
+
+        private int slotAt(int table, int slot) {
+            return HEADER_SIZE + (table * capacity + slot) * SLOT_SIZE;
+        }
+
+
+        private void close() throws IOException {
+            channel.close();
+        }
+
+
+    }
+
+
+}
@@ -0,0 +1,183 @@
+package monerorequest;
+
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Formats and strictly parses start dates in the truncated RFC 3339 form yyyy-MM-dd'T'HH:mm:ss.SSS'Z' (always UTC),
+ * straight to and from epoch millis. No formatter objects, no exceptions on bad input, and safe to share across threads.
+ */
+final class Rfc3339 {
+    // Returned by parse for text that isn't a valid start date
+    public static final long INVALID = Long.MIN_VALUE;
+    public static final int LENGTH = 24;
+    // 0000-01-01T00:00:00.000Z and 9999-12-31T23:59:59.999Z, the range four year digits can show
+    public static final long MIN_EPOCH_MILLIS = -62_167_219_200_000L;
+    public static final long MAX_EPOCH_MILLIS = 253_402_300_799_999L;
+
+    // 0 stands for any digit
+    private static final String TEMPLATE = "0000-00-00T00:00:00.000Z";
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    // Days from 0000-03-01 (the start of the proleptic Gregorian era used below) to 1970-01-01
+    private static final long EPOCH_DAY_OFFSET = 719_468;
+    private static final int DAYS_PER_ERA = 146_097;
+
+    // The last day formatted; most calls format "now", so the date part rarely changes
+    private static volatile Day lastDay = new Day(0);
+
+
+    private Rfc3339() {
+    }
+
+
+    public static String format(long epochMillis) {
+        byte[] text = new byte[LENGTH];
+        write(epochMillis, text);
+        return new String(text, StandardCharsets.ISO_8859_1);
+    }
+
+
+    // Appends the formatted date without creating an intermediate String
+    public static StringBuilder appendTo(StringBuilder builder, long epochMillis) {
+        byte[] text = new byte[LENGTH];
+        write(epochMillis, text);
+        for (byte b : text) {
+            builder.append((char) b);
+        }
+        return builder;
+    }
+
+
+    // Epoch millis, or INVALID
+    public static long parse(CharSequence text) {
+        if (reason(text) != Check.Reason.VALID) {
+            return INVALID;
+        }
+        long days = epochDay(digits(text, 0, 4), digits(text, 5, 2), digits(text, 8, 2));
+        long millisOfDay = ((digits(text, 11, 2) * 60L + digits(text, 14, 2)) * 60 + digits(text, 17, 2)) * 1000 + digits(text, 20, 3);
+        return days * MILLIS_PER_DAY + millisOfDay;
+    }
+
+
+    // VALID, INVALID_FORMAT if the text doesn't match the pattern, or INVALID_DATE if a field is out of range
+    public static Check.Reason reason(CharSequence text) {
+        if (text.length() != LENGTH) {
+            return Check.Reason.INVALID_FORMAT;
+        }
+        for (int i = 0; i < LENGTH; i++) {
+            char expected = TEMPLATE.charAt(i);
+            char c = text.charAt(i);
+            if (expected == '0' ? (c < '0' || c > '9') : c != expected) {
+                return Check.Reason.INVALID_FORMAT;
+            }
+        }
+
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+            return Check.Reason.INVALID_DATE;
+        }
+        if (digits(text, 11, 2) > 23 || digits(text, 14, 2) > 59 || digits(text, 17, 2) > 59) {
+            return Check.Reason.INVALID_DATE;
+        }
+        return Check.Reason.VALID;
+    }
+
+
+    private static void write(long epochMillis, byte[] text) {
+        if (epochMillis < MIN_EPOCH_MILLIS || epochMillis > MAX_EPOCH_MILLIS) {
+            throw new IllegalArgumentException("epochMillis is outside years 0000 to 9999");
+        }
+        long epochDay = Math.floorDiv(epochMillis, MILLIS_PER_DAY);
+        int millisOfDay = (int) Math.floorMod(epochMillis, MILLIS_PER_DAY);
+
+        Day day = lastDay;
+        if (day.epochDay != epochDay) {
+            day = new Day(epochDay);
+            lastDay = day;
+        }
+        System.arraycopy(day.text, 0, text, 0, day.text.length);
+
+        int seconds = millisOfDay / 1000;
+        put(text, 11, seconds / 3600, 2);
+        text[13] = ':';
+        put(text, 14, seconds / 60 % 60, 2);
+        text[16] = ':';
+        put(text, 17, seconds % 60, 2);
+        text[19] = '.';
+        put(text, 20, millisOfDay % 1000, 3);
+        text[23] = 'Z';
+    }
+
+
+    // Days since 1970-01-01 of a proleptic Gregorian date (Howard Hinnant's days_from_civil)
+    private static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * DAYS_PER_ERA + dayOfEra - EPOCH_DAY_OFFSET;
+    }
+
+
+    private static int digits(CharSequence text, int offset, int count) {
+        int result = 0;
+        for (int i = offset; i < offset + count; i++) {
+            result = result * 10 + (text.charAt(i) - '0');
+        }
+        return result;
+    }
+
+
+    private static void put(byte[] text, int offset, int value, int count) {
+        for (int i = offset + count - 1; i >= offset; i--) {
+            text[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2 && (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0))) {
+            return 29;
+        }
+        return DAYS_IN_MONTH[month - 1];
+    }
+
+
+    /**
+     * The "yyyy-MM-ddT" text of one day (Hinnant's civil_from_days); immutable, so it can be shared without locking.
+     */
+    private static final class Day {
+        private final long epochDay;
+        private final byte[] text = new byte[11];
+
+
+        private Day(long epochDay) {
+            this.epochDay = epochDay;
+            long z = epochDay + EPOCH_DAY_OFFSET;
+            long era = Math.floorDiv(z, DAYS_PER_ERA);
+            int dayOfEra = (int) (z - era * DAYS_PER_ERA);
+            int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+            int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+            int shiftedMonth = (5 * dayOfYear + 2) / 153;
+            int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+            int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+            int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+
+            put(text, 0, year, 4);
+            text[4] = '-';
+            put(text, 5, month, 2);
+            text[7] = '-';
+            put(text, 8, day, 2);
+            text[10] = 'T';
+        }
+
+
+    }
+
+
+}
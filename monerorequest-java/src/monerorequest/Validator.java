@@ -0,0 +1,164 @@
+package monerorequest;
+
+import java.util.List;
+
+
+/**
+ * Reusable, allocation-free validator for whole payment requests, reporting the first failing field and why.
+ * Holds the last failing field, so use one instance per thread.
+ */
+final class Validator {
+    /**
+     * The payment request field a validation failure refers to.
+     */
+    enum Field {
+        CUSTOM_LABEL("custom_label"),
+        SELLERS_WALLET("sellers_wallet"),
+        CURRENCY("currency"),
+        AMOUNT("amount"),
+        PAYMENT_ID("payment_id"),
+        START_DATE("start_date"),
+        DAYS_PER_BILLING_CYCLE("days_per_billing_cycle"),
+        NUMBER_OF_PAYMENTS("number_of_payments"),
+        CHANGE_INDICATOR_URL("change_indicator_url");
+
+        private final String key;
+
+
+        Field(String key) {
+            this.key = key;
+        }
+
+
+        // The field's name in the JSON payload
+        public String key() {
+            return key;
+        }
+    }
+
+    private final boolean allowStandard;
+    private final boolean allowIntegratedAddress;
+    private final boolean allowSubaddress;
+    private Field failedField;
+
+
+    // Uses the same wallet rules as MoneroPaymentRequest.create
+    Validator() {
+        this(true, true, false);
+    }
+
+
+    Validator(boolean allowStandard, boolean allowIntegratedAddress, boolean allowSubaddress) {
+        this.allowStandard = allowStandard;
+        this.allowIntegratedAddress = allowIntegratedAddress;
+        this.allowSubaddress = allowSubaddress;
+    }
+
+
+    // The field that failed the last validation, or null if it passed
+    public Field failedField() {
+        return failedField;
+    }
+
+
+    // Validates a typed request (e.g. one that was decoded rather than built)
+    public Check.Reason validate(PaymentRequest request) {
+        Check.Reason reason;
+        if (!Check.name(request.customLabel())) {
+            return fail(Field.CUSTOM_LABEL, Check.Reason.NOT_A_STRING);
+        }
+        if ((reason = Check.walletReason(request.sellersWallet(), allowStandard, allowIntegratedAddress, allowSubaddress)) != Check.Reason.VALID) {
+            return fail(Field.SELLERS_WALLET, reason);
+        }
+        if ((reason = Check.currencyReason(request.currency())) != Check.Reason.VALID) {
+            return fail(Field.CURRENCY, reason);
+        }
+        if ((reason = Check.amountReason(request.amount())) != Check.Reason.VALID) {
+            return fail(Field.AMOUNT, reason);
+        }
+        if (request.daysPerBillingCycle() < 0) {
+            return fail(Field.DAYS_PER_BILLING_CYCLE, Check.Reason.NEGATIVE);
+        }
+        if (request.numberOfPayments() < 0) {
+            return fail(Field.NUMBER_OF_PAYMENTS, Check.Reason.NEGATIVE);
+        }
+        if ((reason = Check.changeIndicatorUrlReason(request.changeIndicatorUrl())) != Check.Reason.VALID) {
+            return fail(Field.CHANGE_INDICATOR_URL, reason);
+        }
+        return pass();
+    }
+
+
+    // Validates the same arguments MoneroPaymentRequest.create takes (an empty payment ID or start date gets a default there)
+    public Check.Reason validate(String customLabel,
+                                 String sellersWallet,
+                                 String currency,
+                                 String amount,
+                                 String paymentId,
+                                 String startDate,
+                                 Integer daysPerBillingCycle,
+                                 Integer numberOfPayments,
+                                 String changeIndicatorUrl) {
+        Check.Reason reason;
+        if (!Check.name(customLabel)) {
+            return fail(Field.CUSTOM_LABEL, Check.Reason.NOT_A_STRING);
+        }
+        if ((reason = Check.walletReason(sellersWallet, allowStandard, allowIntegratedAddress, allowSubaddress)) != Check.Reason.VALID) {
+            return fail(Field.SELLERS_WALLET, reason);
+        }
+        if ((reason = Check.currencyReason(currency)) != Check.Reason.VALID) {
+            return fail(Field.CURRENCY, reason);
+        }
+        if ((reason = Check.amountReason(amount)) != Check.Reason.VALID) {
+            return fail(Field.AMOUNT, reason);
+        }
+        if (paymentId != null && !paymentId.isEmpty() && (reason = Check.paymentIDReason(paymentId)) != Check.Reason.VALID) {
+            return fail(Field.PAYMENT_ID, reason);
+        }
+        if (startDate != null && (reason = Check.startDateReason(startDate)) != Check.Reason.VALID) {
+            return fail(Field.START_DATE, reason);
+        }
+        if ((reason = Check.nonNegativeIntegerReason(daysPerBillingCycle)) != Check.Reason.VALID) {
+            return fail(Field.DAYS_PER_BILLING_CYCLE, reason);
+        }
+        if ((reason = Check.nonNegativeIntegerReason(numberOfPayments)) != Check.Reason.VALID) {
+            return fail(Field.NUMBER_OF_PAYMENTS, reason);
+        }
+        if ((reason = Check.changeIndicatorUrlReason(changeIndicatorUrl)) != Check.Reason.VALID) {
+            return fail(Field.CHANGE_INDICATOR_URL, reason);
+        }
+        return pass();
+    }
+
+
+    // Validates every request, filling reasons (and fields, if given) by index; returns the number of failures
+    public int validateAll(List<PaymentRequest> requests, Check.Reason[] reasons, Field[] fields) {
+        int failures = 0;
+        for (int i = 0; i < requests.size(); i++) {
+            Check.Reason reason = validate(requests.get(i));
+            reasons[i] = reason;
+            if (fields != null) {
+                fields[i] = failedField;
+            }
+            if (reason != Check.Reason.VALID) {
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+
+    private Check.Reason fail(Field field, Check.Reason reason) {
+        Metrics.validationFailure(field, reason);
+        failedField = field;
+        return reason;
+    }
+
+
+    private Check.Reason pass() {
+        failedField = null;
+        return Check.Reason.VALID;
+    }
+
+
+}
@@ -0,0 +1,312 @@
+package monerorequest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+class ChangeIndicatorPollerTest {
+    private static final String WALLET = "4At3X5rvVypTofgmueN9s9QtrzdRe5BueFrskAZi17BoYbhzysozzoMFB6zWnTKdGC6AxEAbEE5czFR3hbEEJbsm4hCeX2S";
+    // Long enough that only pollNow polls during a test
+    private static final Duration INTERVAL = Duration.ofDays(1);
+
+    // Stand-in merchant: each path answers with its configured status and body, and honours If-None-Match
+    private HttpServer server;
+    private final Map<String, Integer> statuses = new ConcurrentHashMap<>();
+    private final Map<String, String> bodies = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> hits = new ConcurrentHashMap<>();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private volatile long delayMillis;
+
+    private final List<ChangeIndicatorPoller.Event> events = new ArrayList<>();
+    private final ChangeIndicatorPoller.Listener listener = event -> {
+        synchronized (events) {
+            events.add(event);
+        }
+    };
+    private final AtomicInteger nextPaymentId = new AtomicInteger(1);
+
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+
+    @Test
+    void pollsEachDistinctUrlOnce() throws Exception {
+        try (ChangeIndicatorPoller poller = new ChangeIndicatorPoller(INTERVAL, 4, listener)) {
+            for (int i = 0; i < 3; i++) {
+                poller.register(request("/shared"));
+            }
+            poller.register(request("/own"));
+            assertEquals(2, poller.endpointCount());
+
+            poller.pollNow();
+            assertEquals(1, hits("/shared"));
+            assertEquals(1, hits("/own"));
+        }
+    }
+
+
+    @Test
+    void reportsChangesWithEverySubscriptionOnTheUrl() throws Exception {
+        bodies.put("/plan", "v1");
+        try (ChangeIndicatorPoller poller = new ChangeIndicatorPoller(INTERVAL, 4, listener)) {
+            PaymentRequest first = request("/plan");
+            PaymentRequest second = request("/plan");
+            poller.register(first);
+            poller.register(second);
+
+            // The first poll only records a baseline, and an unchanged ETag gets a 304
+            poller.pollNow();
+            poller.pollNow();
+            assertEquals(1, notModified.get());
+            assertTrue(events().isEmpty());
+
+            bodies.put("/plan", "v2");
+            poller.pollNow();
+            List<ChangeIndicatorPoller.Event> changed = events();
+            assertEquals(1, changed.size());
+            ChangeIndicatorPoller.Event event = changed.get(0);
+            assertEquals(ChangeIndicatorPoller.Type.CHANGED, event.type());
+            assertEquals("v2", event.body());
+            long[] paymentIds = event.paymentIds();
+            Arrays.sort(paymentIds);
+            assertArrayEquals(new long[] {first.paymentId(), second.paymentId()}, paymentIds);
+        }
+    }
+
+
+    @Test
+    void reportsGoneAndFailedOncePerTransition() throws Exception {
+        statuses.put("/cancelled", 410);
+        statuses.put("/broken", 500);
+        try (ChangeIndicatorPoller poller = new ChangeIndicatorPoller(INTERVAL, 4, listener)) {
+            poller.register(request("/cancelled"));
+            poller.register(request("/broken"));
+            poller.pollNow();
+            poller.pollNow();
+
+            List<ChangeIndicatorPoller.Event> reported = events();
+            assertEquals(2, reported.size());
+            for (ChangeIndicatorPoller.Event event : reported) {
+                if (event.url().endsWith("/cancelled")) {
+                    assertEquals(ChangeIndicatorPoller.Type.GONE, event.type());
+                    assertEquals(410, event.status());
+                } else {
+                    assertEquals(ChangeIndicatorPoller.Type.FAILED, event.type());
+                    assertEquals(500, event.status());
+                    assertNull(event.body());
+                }
+            }
+        }
+    }
+
+
+    @Test
+    void limitsConcurrentRequestsPerHost() throws Exception {
+        delayMillis = 20;
+        try (ChangeIndicatorPoller poller = new ChangeIndicatorPoller(INTERVAL, 2, listener)) {
+            for (int i = 0; i < 20; i++) {
+                poller.register(request("/subscription/" + i));
+            }
+            poller.pollNow();
+            assertEquals(2, maxInFlight.get());
+            for (int i = 0; i < 20; i++) {
+                assertEquals(1, hits("/subscription/" + i));
+            }
+        }
+    }
+
+
+    @Test
+    void stopsPollingUnregisteredUrls() {
+        try (ChangeIndicatorPoller poller = new ChangeIndicatorPoller(INTERVAL, 2, listener)) {
+            PaymentRequest first = request("/shared");
+            PaymentRequest second = request("/shared");
+            poller.register(first);
+            poller.register(second);
+            poller.unregister(first);
+            assertEquals(1, poller.endpointCount());
+            poller.unregister(second);
+            assertEquals(0, poller.endpointCount());
+        }
+    }
+
+
+    @Test
+    void rejectsUrlsWithoutAResolvableHost() {
+        try (ChangeIndicatorPoller poller = new ChangeIndicatorPoller(INTERVAL, 2, listener)) {
+            PaymentRequest underscore = builder().changeIndicatorUrl("https://my_shop.example.com/changes").build();
+            assertThrows(IllegalArgumentException.class, () -> poller.register(underscore));
+            PaymentRequest ftp = builder().changeIndicatorUrl("ftp://shop.example.com/changes").build();
+            assertThrows(IllegalArgumentException.class, () -> poller.register(ftp));
+            assertEquals(0, poller.endpointCount());
+        }
+    }
+
+
+    @Test
+    void leavesTheCallersExecutorRunning() {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            new ChangeIndicatorPoller(null, executor, INTERVAL, 0, 2, listener).close();
+            assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+
+    @Test
+    void givesBackThePermitWhenTheExecutorRejectsAPoll() {
+        ExecutorService delegate = Executors.newCachedThreadPool();
+        AtomicBoolean reject = new AtomicBoolean(true);
+        ExecutorService executor = new AbstractExecutorService() {
+            @Override
+            public void execute(Runnable command) {
+                if (reject.get()) {
+                    throw new RejectedExecutionException("rejecting");
+                }
+                delegate.execute(command);
+            }
+
+            @Override
+            public void shutdown() {
+                delegate.shutdown();
+            }
+
+            @Override
+            public List<Runnable> shutdownNow() {
+                return delegate.shutdownNow();
+            }
+
+            @Override
+            public boolean isShutdown() {
+                return delegate.isShutdown();
+            }
+
+            @Override
+            public boolean isTerminated() {
+                return delegate.isTerminated();
+            }
+
+            @Override
+            public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+                return delegate.awaitTermination(timeout, unit);
+            }
+        };
+        try (ChangeIndicatorPoller poller = new ChangeIndicatorPoller(null, executor, INTERVAL, 0, 1, listener)) {
+            poller.register(request("/plan"));
+            assertThrows(RejectedExecutionException.class, poller::pollNow);
+
+            // With the permit leaked, this poll would queue behind it forever
+            reject.set(false);
+            assertTimeoutPreemptively(Duration.ofSeconds(10), poller::pollNow);
+            assertEquals(1, hits("/plan"));
+        } finally {
+            delegate.shutdownNow();
+        }
+    }
+
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int now = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(now, Math::max);
+        try {
+            String path = exchange.getRequestURI().getPath();
+            hits.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+            if (delayMillis > 0) {
+                Thread.sleep(delayMillis);
+            }
+            int status = statuses.getOrDefault(path, 200);
+            String body = bodies.getOrDefault(path, "unchanged");
+            String etag = "\"" + body.hashCode() + "\"";
+            if (status == 200 && etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.sendResponseHeaders(status, bytes.length);
+            exchange.getResponseBody().write(bytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+
+    private int hits(String path) {
+        AtomicInteger count = hits.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+
+    private List<ChangeIndicatorPoller.Event> events() {
+        synchronized (events) {
+            return new ArrayList<>(events);
+        }
+    }
+
+
+    private PaymentRequest request(String path) {
+        String url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path;
+        return builder().changeIndicatorUrl(url).build();
+    }
+
+
+    private PaymentRequest.Builder builder() {
+        return PaymentRequest.builder()
+                .sellersWallet(WALLET)
+                .currency("USD")
+                .amount("9.99")
+                .paymentId(nextPaymentId.getAndIncrement())
+                .daysPerBillingCycle(30);
+    }
+
+
+}
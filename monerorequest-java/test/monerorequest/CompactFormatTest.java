@@ -0,0 +1,179 @@
+package monerorequest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.Test;
+
+
+class CompactFormatTest {
+    private static final String WALLET = "4At3X5rvVypTofgmueN9s9QtrzdRe5BueFrskAZi17BoYbhzysozzoMFB6zWnTKdGC6AxEAbEE5czFR3hbEEJbsm4hCeX2S";
+    // A 10-byte varint whose value is negative as a long
+    private static final byte[] NEGATIVE_VARINT = {-1, -1, -1, -1, -1, -1, -1, -1, -1, 0x01};
+
+
+    @Test
+    void roundTripsThroughTheEncoder() throws IOException {
+        PaymentRequest request = PaymentRequest.builder()
+                .customLabel("Caf\u00e9 \u6708\u984d\u30d7\u30e9\u30f3 \ud83d\ude80, \"premium\" tier")
+                .sellersWallet(WALLET)
+                .currency("USD")
+                .amount("1,000.50")
+                .paymentId(0x1234_5678_9abc_def0L)
+                .startDate("2024-02-20T09:59:58.030Z")
+                .daysPerBillingCycle(30)
+                .numberOfPayments(12)
+                .changeIndicatorUrl("https://merchant.example.com/subscriptions/changes")
+                .build();
+        String encoded = MoneroPaymentRequest.create(request, "2");
+        assertEquals(request.toMap(), MoneroPaymentRequest.readRequest(encoded).toMap());
+    }
+
+
+    @Test
+    void decodesAHandBuiltStoredRequest() {
+        PaymentRequest request = MoneroPaymentRequest.readRequest(compact(body(30, 12, "Label")));
+        assertEquals("Label", request.customLabel());
+        assertEquals(WALLET, request.sellersWallet());
+        assertEquals("EUR", request.currency());
+        assertEquals(30, request.daysPerBillingCycle());
+        assertEquals(12, request.numberOfPayments());
+    }
+
+
+    @Test
+    void rejectsNegativeStringLengths() {
+        ByteArrayOutputStream body = header(30, 12);
+        writeString(body, WALLET);
+        body.writeBytes(NEGATIVE_VARINT);
+        body.writeBytes("EUR".getBytes(StandardCharsets.US_ASCII));
+        assertRejected(body.toByteArray());
+    }
+
+
+    @Test
+    void rejectsOversizedStringLengths() {
+        ByteArrayOutputStream body = header(30, 12);
+        writeString(body, WALLET);
+        writeVarLong(body, 1000);
+        body.writeBytes("EUR".getBytes(StandardCharsets.US_ASCII));
+        assertRejected(body.toByteArray());
+
+        ByteArrayOutputStream huge = header(30, 12);
+        writeVarLong(huge, Long.MAX_VALUE);
+        assertRejected(huge.toByteArray());
+    }
+
+
+    @Test
+    void rejectsNegativeCounts() {
+        assertRejected(body(-1, 12, "Label"));
+        assertRejected(body(30, -5, "Label"));
+        assertRejected(body(Integer.MIN_VALUE, 0, "Label"));
+    }
+
+
+    @Test
+    void rejectsEveryTruncation() {
+        byte[] body = body(30, 12, "Label");
+        for (int length = 1; length < body.length; length++) {
+            assertRejected(Arrays.copyOf(body, length));
+        }
+    }
+
+
+    @Test
+    void rejectsRandomDamageWithIllegalArgumentException() {
+        byte[] valid = body(30, 12, "Gym membership, monthly");
+        Random random = new Random(21);
+        for (int i = 0; i < 20_000; i++) {
+            byte[] damaged = valid.clone();
+            // Keep the mode byte: an unknown mode is reported by the inflater path, as with version 1
+            for (int changes = 1 + random.nextInt(3); changes > 0; changes--) {
+                damaged[1 + random.nextInt(damaged.length - 1)] = (byte) random.nextInt(256);
+            }
+            try {
+                MoneroPaymentRequest.readRequest(compact(damaged));
+            } catch (IllegalArgumentException expected) {
+                // Malformed input
+            } catch (RuntimeException e) {
+                fail("Unexpected " + e + " for " + Arrays.toString(damaged), e);
+            }
+        }
+    }
+
+
+    private static void assertRejected(byte[] body) {
+        assertThrows(IllegalArgumentException.class, () -> MoneroPaymentRequest.readRequest(compact(body)));
+    }
+
+
+    // A STORED request with nothing packed: wallet and currency are strings in the text section
+    private static byte[] body(int daysPerBillingCycle, int numberOfPayments, String customLabel) {
+        ByteArrayOutputStream body = header(daysPerBillingCycle, numberOfPayments);
+        writeString(body, WALLET);
+        writeString(body, "EUR");
+        writeString(body, "9.99");
+        writeString(body, customLabel);
+        writeString(body, "");
+        return body.toByteArray();
+    }
+
+
+    private static ByteArrayOutputStream header(int daysPerBillingCycle, int numberOfPayments) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(CompactFormat.STORED);
+        body.write(0);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            body.write((int) (0x1234_5678_9abc_def0L >>> shift));
+        }
+        writeVarLong(body, zigzag(daysPerBillingCycle));
+        writeVarLong(body, zigzag(numberOfPayments));
+        return body;
+    }
+
+
+    // The monero-request string for the bytes, with a matching CRC so decoding gets past the checksum
+    private static String compact(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        int value = (int) crc.getValue();
+        byte[] bytes = Arrays.copyOf(body, body.length + 4);
+        for (int i = 0; i < 4; i++) {
+            bytes[body.length + i] = (byte) (value >>> (24 - 8 * i));
+        }
+        return "monero-request:2:" + Base64.getEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+
+    private static void writeString(ByteArrayOutputStream out, String string) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+
+}
@@ -0,0 +1,214 @@
+package monerorequest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+
+
+class JsonTokenizerTest {
+    private static final String WALLET = "4At3X5rvVypTofgmueN9s9QtrzdRe5BueFrskAZi17BoYbhzysozzoMFB6zWnTKdGC6AxEAbEE5czFR3hbEEJbsm4hCeX2S";
+
+
+    @Test
+    void parsesLikeTheOldParserOnInputItHandled() {
+        String[] documents = {
+                "{\"custom_label\":\"Unlabeled Monero Payment Request\",\"currency\":\"USD\",\"amount\":\"25.00\"}",
+                "{ \"days_per_billing_cycle\" : 30 , \"number_of_payments\" : 12 }",
+                "{\"custom_label\":\"Caf\u00e9 \u6708\u984d\u30d7\u30e9\u30f3 \ud83d\ude80\",\"sellers_wallet\":\"" + WALLET + "\"}",
+                "{\"negative\":-7,\"fraction\":0.25,\"yes\":true,\"no\":false,\"nothing\":null}",
+                "{\"start_date\":\"\",\"change_indicator_url\":\"\"}",
+        };
+        for (String document : documents) {
+            assertEquals(legacyParseJson(document), JsonUtils.parseJson(document), document);
+        }
+    }
+
+
+    @Test
+    void decodesLikeTheOldDecoder() throws IOException {
+        Map<String, Object> data = paymentRequestData("Gym membership monthly");
+        String encoded = Encode.v1MoneroPaymentRequest(data);
+
+        Map<String, Object> decoded = Decode.v1MoneroPaymentRequest(encoded);
+        Map<String, Object> legacy = legacyV1MoneroPaymentRequest(encoded);
+        // The old decoder read integers as doubles and then failed to parse "30.0" as an int, so it returned 0
+        assertEquals(0, legacy.remove("days_per_billing_cycle"));
+        assertEquals(0, legacy.remove("number_of_payments"));
+        assertEquals(30, decoded.remove("days_per_billing_cycle"));
+        assertEquals(12, decoded.remove("number_of_payments"));
+        assertEquals(legacy, decoded);
+    }
+
+
+    @Test
+    void keepsCommasAndColonsInsideStrings() throws IOException {
+        String label = "Hosting: 2 vCPU, 4GB RAM, 80GB SSD";
+        Map<String, Object> parsed = JsonUtils.parseJson("{\"custom_label\":\"" + label + "\",\"url\":\"https://a.example:8443/x?a=1,2\"}");
+        assertEquals(label, parsed.get("custom_label"));
+        assertEquals("https://a.example:8443/x?a=1,2", parsed.get("url"));
+
+        Map<String, Object> data = paymentRequestData(label);
+        assertEquals(data, Decode.v1MoneroPaymentRequest(Encode.v1MoneroPaymentRequest(data)));
+    }
+
+
+    @Test
+    void decodesEscapes() throws IOException {
+        Map<String, Object> parsed = JsonUtils.parseJson(
+                "{\"quoted\":\"say \\\"hi\\\"\",\"controls\":\"a\\nb\\tc\\r\\b\\f\",\"slashes\":\"\\\\ \\/\"}");
+        assertEquals("say \"hi\"", parsed.get("quoted"));
+        assertEquals("a\nb\tc\r\b\f", parsed.get("controls"));
+        assertEquals("\\ /", parsed.get("slashes"));
+
+        Map<String, Object> data = paymentRequestData("\"Premium\" \\ tier\n");
+        assertEquals(data, Decode.v1MoneroPaymentRequest(Encode.v1MoneroPaymentRequest(data)));
+    }
+
+
+    @Test
+    void decodesUnicodeEscapes() {
+        Map<String, Object> parsed = JsonUtils.parseJson(
+                "{\"latin\":\"Caf\\u00e9\",\"cjk\":\"\\u6708\\u984D\",\"emoji\":\"\\ud83d\\ude80\",\"name\\u0021\":1}");
+        assertEquals("Caf\u00e9", parsed.get("latin"));
+        assertEquals("\u6708\u984d", parsed.get("cjk"));
+        assertEquals("\ud83d\ude80", parsed.get("emoji"));
+        assertEquals(1.0, parsed.get("name!"));
+    }
+
+
+    @Test
+    void decodesMultiByteLabelsOnBothPaths() throws IOException {
+        String label = "Caf\u00e9 \u00abCr\u00e8me\u00bb \u2014 \u6708\u984d\u30d7\u30e9\u30f3 \ud83d\ude80";
+        // Without escapes the bytes go straight to the String constructor; an escape forces the char-by-char path
+        assertEquals(label, JsonUtils.parseJson("{\"a\":\"" + label + "\"}").get("a"));
+        assertEquals(label + "\n", JsonUtils.parseJson("{\"a\":\"" + label + "\\n\"}").get("a"));
+
+        Map<String, Object> data = paymentRequestData(label + ", \"premium\" tier");
+        assertEquals(data, Decode.v1MoneroPaymentRequest(Encode.v1MoneroPaymentRequest(data)));
+    }
+
+
+    @Test
+    void readsIntegerFields() throws IOException {
+        Map<String, Object> parsed = JsonUtils.parseJson("{\"days_per_billing_cycle\":30,\"number_of_payments\":0}");
+        assertEquals(30.0, parsed.get("days_per_billing_cycle"));
+        assertEquals(0.0, parsed.get("number_of_payments"));
+
+        Map<String, Object> decoded = Decode.v1MoneroPaymentRequest(Encode.v1MoneroPaymentRequest(paymentRequestData("Plain")));
+        assertEquals(30, decoded.get("days_per_billing_cycle"));
+        assertEquals(12, decoded.get("number_of_payments"));
+    }
+
+
+    @Test
+    void rejectsMalformedUtf8OnBothPaths() {
+        byte[][] malformed = {
+                {(byte) 0xC3, '('},                   // continuation byte missing
+                {(byte) 0xC0, (byte) 0xAF},           // overlong '/'
+                {(byte) 0xED, (byte) 0xA0, (byte) 0x80},  // UTF-16 surrogate
+                {(byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80},  // past U+10FFFF
+                {(byte) 0xFF},                        // never valid
+                {(byte) 0xE6, (byte) 0x9C},           // truncated at the closing quote
+        };
+        for (byte[] bytes : malformed) {
+            byte[] plain = json(bytes, false);
+            byte[] escaped = json(bytes, true);
+            assertThrows(IllegalArgumentException.class, () -> JsonUtils.parseJson(plain, 0, plain.length));
+            assertThrows(IllegalArgumentException.class, () -> JsonUtils.parseJson(escaped, 0, escaped.length));
+        }
+    }
+
+
+    // {"a":"x<bytes>y"}, with an escape before the bytes if asked for
+    private static byte[] json(byte[] bytes, boolean escape) {
+        byte[] prefix = ("{\"a\":\"x" + (escape ? "\\n" : "")).getBytes(StandardCharsets.US_ASCII);
+        byte[] suffix = "y\"}".getBytes(StandardCharsets.US_ASCII);
+        byte[] json = new byte[prefix.length + bytes.length + suffix.length];
+        System.arraycopy(prefix, 0, json, 0, prefix.length);
+        System.arraycopy(bytes, 0, json, prefix.length, bytes.length);
+        System.arraycopy(suffix, 0, json, prefix.length + bytes.length, suffix.length);
+        return json;
+    }
+
+
+    private static Map<String, Object> paymentRequestData(String customLabel) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("custom_label", customLabel);
+        data.put("sellers_wallet", WALLET);
+        data.put("currency", "USD");
+        data.put("amount", "25.00");
+        data.put("payment_id", "9fc88080d1d5dc09");
+        data.put("start_date", "2024-02-20T09:59:58.030Z");
+        data.put("days_per_billing_cycle", 30);
+        data.put("number_of_payments", 12);
+        data.put("change_indicator_url", "");
+        return data;
+    }
+
+
+    // The split-based parser this tokenizer replaced, kept to show results match on input it handled correctly
+    private static Map<String, Object> legacyParseJson(String jsonStr) {
+        Map<String, Object> result = new HashMap<>();
+        String jsonContent = jsonStr.trim().substring(1, jsonStr.length() - 1).trim();
+        String[] keyValuePairs = jsonContent.split(",");
+        Pattern numberPattern = Pattern.compile("-?\\d+(\\.\\d+)?");
+
+        for (String pair : keyValuePairs) {
+            String[] parts = pair.split(":", 2);
+            String key = parts[0].trim().replace("\"", "");
+            String value = parts[1].trim();
+            Object processedValue;
+            if ("null".equalsIgnoreCase(value)) {
+                processedValue = null;
+            } else if ("true".equalsIgnoreCase(value)) {
+                processedValue = Boolean.TRUE;
+            } else if ("false".equalsIgnoreCase(value)) {
+                processedValue = Boolean.FALSE;
+            } else if (numberPattern.matcher(value).matches()) {
+                processedValue = Double.parseDouble(value);
+            } else if (value.startsWith("\"") && value.endsWith("\"")) {
+                processedValue = value.substring(1, value.length() - 1);
+            } else {
+                processedValue = value;
+            }
+            result.put(key, processedValue);
+        }
+        return result;
+    }
+
+
+    // The old Decode.v1MoneroPaymentRequest: Base64, GZIPInputStream, a String, then the split-based parser
+    private static Map<String, Object> legacyV1MoneroPaymentRequest(String encodedStr) throws IOException {
+        byte[] decodedBytes = Base64.getDecoder().decode(encodedStr);
+        byte[] decompressedData;
+        try (GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(decodedBytes))) {
+            decompressedData = gzipInputStream.readAllBytes();
+        }
+        Map<String, Object> data = legacyParseJson(new String(decompressedData, StandardCharsets.UTF_8));
+        data.computeIfPresent("days_per_billing_cycle", (key, value) -> legacyInteger(value));
+        data.computeIfPresent("number_of_payments", (key, value) -> legacyInteger(value));
+        return data;
+    }
+
+
+    private static Object legacyInteger(Object value) {
+        try {
+            return Integer.parseInt(value.toString());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+
+}
@@ -0,0 +1,79 @@
+package monerorequest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+class MoneroAddressTest {
+    // The donation address in the README
+    private static final String STANDARD = "4At3X5rvVypTofgmueN9s9QtrzdRe5BueFrskAZi17BoYbhzysozzoMFB6zWnTKdGC6AxEAbEE5czFR3hbEEJbsm4hCeX2S";
+    private static final String INTEGRATED = "4LL9oSLmtpccfufTMvppY6JwXNouMBzSkbLYfpAV5Usx3skxNgYeYTRj5UzqtReoS44qo9mtmXCqY45DJ852K5Jv2bYXZKKQePHES9khPK";
+    private static final long INTEGRATED_PAYMENT_ID = 0x8a125052fe6f3877L;
+    // The Monero General Fund's donation subaddress
+    private static final String SUBADDRESS = "888tNkZrPN6JsEgekjMnABU4TBzc2Dt29EPAvkRxbANsAnjyPbb3iQ1YBRk1UXcdRsiKc9dhwMVgN5S9cQUiyoogDavup3H";
+
+
+    @Test
+    void acceptsTheReadmeStandardAddress() {
+        assertEquals(MoneroAddress.STANDARD, MoneroAddress.networkByte(STANDARD));
+        assertTrue(MoneroAddress.isValid(STANDARD));
+        assertEquals(Check.Reason.VALID, Check.walletReason(STANDARD, true, true, false));
+    }
+
+
+    @Test
+    void acceptsAnIntegratedAddressAndReadsItsPaymentId() {
+        assertEquals(MoneroAddress.INTEGRATED, MoneroAddress.networkByte(INTEGRATED));
+        assertEquals(INTEGRATED_PAYMENT_ID, MoneroAddress.paymentId(INTEGRATED));
+        assertEquals("8a125052fe6f3877", PaymentRequest.formatPaymentId(MoneroAddress.paymentId(INTEGRATED)));
+        assertEquals(Check.Reason.VALID, Check.walletReason(INTEGRATED, true, true, false));
+        assertEquals(Check.Reason.INVALID_LENGTH, Check.walletReason(INTEGRATED, true, false, false));
+    }
+
+
+    @Test
+    void acceptsASubaddressOnlyWhenAllowed() {
+        assertEquals(MoneroAddress.SUBADDRESS, MoneroAddress.networkByte(SUBADDRESS));
+        assertEquals(Check.Reason.VALID, Check.walletReason(SUBADDRESS, false, false, true));
+        assertEquals(Check.Reason.INVALID_PREFIX, Check.walletReason(SUBADDRESS, true, true, false));
+    }
+
+
+    @Test
+    void rejectsAOneCharacterTypo() {
+        // 'B' for 'b' near the end: still valid Base58 of the right length, so only the Keccak checksum catches it
+        String typo = STANDARD.substring(0, 85) + "B" + STANDARD.substring(86);
+        assertEquals('b', STANDARD.charAt(85));
+        assertEquals(MoneroAddress.INVALID_CHECKSUM, MoneroAddress.networkByte(typo));
+        assertFalse(MoneroAddress.isValid(typo));
+        assertEquals(Check.Reason.INVALID_CHECKSUM, Check.walletReason(typo, true, true, false));
+        assertFalse(Check.wallet(typo, true, true, false));
+    }
+
+
+    @Test
+    void rejectsEverySingleCharacterSubstitution() {
+        for (String address : new String[] {STANDARD, INTEGRATED, SUBADDRESS}) {
+            for (int i = 1; i < address.length(); i++) {
+                char replacement = address.charAt(i) == '2' ? '3' : '2';
+                String typo = address.substring(0, i) + replacement + address.substring(i + 1);
+                assertTrue(MoneroAddress.networkByte(typo) < 0, typo);
+            }
+        }
+    }
+
+
+    @Test
+    void reEncodesDecodedBytes() {
+        for (String address : new String[] {STANDARD, INTEGRATED, SUBADDRESS}) {
+            byte[] bytes = new byte[80];
+            int length = MoneroAddress.decode(address, bytes, 0);
+            assertEquals(address, MoneroAddress.encode(bytes, 0, length));
+        }
+    }
+
+
+}
@@ -0,0 +1,120 @@
+package monerorequest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+class RequestStoreTest {
+    private static final String WALLET = "4At3X5rvVypTofgmueN9s9QtrzdRe5BueFrskAZi17BoYbhzysozzoMFB6zWnTKdGC6AxEAbEE5czFR3hbEEJbsm4hCeX2S";
+    private static final String INTEGRATED_WALLET = "4LL9oSLmtpccfufTMvppY6JwXNouMBzSkbLYfpAV5Usx3skxNgYeYTRj5UzqtReoS44qo9mtmXCqY45DJ852K5Jv2bYXZKKQePHES9khPK";
+
+    @TempDir
+    Path directory;
+
+
+    @Test
+    void findsAppendedRequestsByPaymentIdAndWallet() throws IOException {
+        try (RequestStore store = new RequestStore(directory, false)) {
+            String first = encoded(1, WALLET);
+            String second = encoded(2, INTEGRATED_WALLET);
+            String third = encoded(3, WALLET);
+            store.append(first);
+            store.appendAll(List.of(second, third));
+
+            assertEquals(3, store.size());
+            assertEquals(second, store.get(2));
+            assertNull(store.get(4));
+            assertEquals(List.of(third, first), store.byWallet(WALLET));
+        }
+    }
+
+
+    @Test
+    void rejectsInvalidRequestsWithoutStoringThem() throws IOException {
+        try (RequestStore store = new RequestStore(directory, false)) {
+            PaymentRequest badAmount = new PaymentRequest("", WALLET, "USD", "1a", 5, PaymentRequest.NO_START_DATE, 0, 0, "");
+            String typo = WALLET.substring(0, 85) + "B" + WALLET.substring(86);
+            PaymentRequest badWallet = new PaymentRequest("", typo, "USD", "1", 6, PaymentRequest.NO_START_DATE, 0, 0, "");
+
+            assertThrows(IllegalArgumentException.class, () -> store.append(Encode.paymentRequest(badAmount, "1")));
+            assertThrows(IllegalArgumentException.class,
+                    () -> store.appendAll(List.of(encoded(7, WALLET), Encode.paymentRequest(badWallet, "1"))));
+            assertEquals(0, store.size());
+            assertEquals(store.logLength(), Files.size(directory.resolve("requests.log")));
+        }
+    }
+
+
+    @Test
+    void growsTheIndexAndRecoversItAfterReopening() throws IOException {
+        List<String> requests = new ArrayList<>();
+        for (int i = 1; i <= 1500; i++) {
+            requests.add(encoded(i, i % 2 == 0 ? WALLET : INTEGRATED_WALLET));
+        }
+        try (RequestStore store = new RequestStore(directory, false)) {
+            store.appendAll(requests);
+        }
+        try (RequestStore store = new RequestStore(directory, false)) {
+            assertEquals(1500, store.size());
+            for (int i = 1; i <= 1500; i++) {
+                assertEquals(requests.get(i - 1), store.get(i));
+            }
+        }
+    }
+
+
+    @Test
+    void failsAnAppendCleanlyWhenTheIndexCantGrow() throws IOException {
+        try (RequestStore store = new RequestStore(directory, false)) {
+            // Fill the index up to the point where the next new key needs it to grow
+            int id = 1;
+            while (true) {
+                long before = store.logLength();
+                // A directory where grow() writes its temporary file makes the grow fail
+                Path blocker = Files.createDirectory(directory.resolve("requests.idx.tmp"));
+                try {
+                    store.append(encoded(id, WALLET));
+                } catch (IOException e) {
+                    assertEquals(before, store.logLength());
+                    assertEquals(id - 1, store.size());
+                    assertNull(store.get(id));
+                    break;
+                } finally {
+                    Files.delete(blocker);
+                }
+                id++;
+            }
+
+            // Once the index can grow again the same request goes in, and everything before it is still found
+            store.append(encoded(id, WALLET));
+            for (int i = 1; i <= id; i++) {
+                assertEquals(encoded(i, WALLET), store.get(i));
+            }
+        }
+    }
+
+
+    private static String encoded(long paymentId, String wallet) throws IOException {
+        return MoneroPaymentRequest.create(PaymentRequest.builder()
+                .customLabel("Subscription " + paymentId)
+                .sellersWallet(wallet)
+                .currency("USD")
+                .amount("9.99")
+                .paymentId(paymentId)
+                .startDate("2024-02-20T09:59:58.030Z")
+                .daysPerBillingCycle(30)
+                .build());
+    }
+
+
+}
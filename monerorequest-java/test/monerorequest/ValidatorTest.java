@@ -0,0 +1,87 @@
+package monerorequest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+class ValidatorTest {
+    private static final String WALLET = "4At3X5rvVypTofgmueN9s9QtrzdRe5BueFrskAZi17BoYbhzysozzoMFB6zWnTKdGC6AxEAbEE5czFR3hbEEJbsm4hCeX2S";
+
+    private final List<String> failures = new ArrayList<>();
+
+
+    @BeforeEach
+    void installRecorder() {
+        Metrics.install(new Metrics.Recorder() {
+            @Override
+            public void stage(Metrics.Stage stage, long nanos) {
+            }
+
+            @Override
+            public void encoded(int uncompressedBytes, int compressedBytes) {
+            }
+
+            @Override
+            public void decoded(int compressedBytes, int uncompressedBytes) {
+            }
+
+            @Override
+            public void validationFailure(Validator.Field field, Check.Reason reason) {
+                synchronized (failures) {
+                    failures.add(field + " " + reason);
+                }
+            }
+        });
+    }
+
+
+    @AfterEach
+    void uninstallRecorder() {
+        Metrics.uninstall();
+    }
+
+
+    @Test
+    void recordsEachFailureOnce() {
+        Validator validator = new Validator();
+        assertEquals(Check.Reason.UNSUPPORTED_CURRENCY, validate(validator, "EUR", "1.00"));
+        assertEquals(Validator.Field.CURRENCY, validator.failedField());
+        assertEquals(Check.Reason.NOT_A_STRING, validate(validator, null, "1.00"));
+        assertEquals(Check.Reason.INVALID_CHARACTER, validate(validator, "USD", "1a"));
+        assertEquals(Validator.Field.AMOUNT, validator.failedField());
+
+        assertEquals(List.of("CURRENCY UNSUPPORTED_CURRENCY", "CURRENCY NOT_A_STRING", "AMOUNT INVALID_CHARACTER"), failures);
+    }
+
+
+    @Test
+    void recordsCheckFailuresOnce() {
+        assertFalse(Check.currency("EUR"));
+        assertFalse(Check.amount("1a"));
+        assertEquals(List.of("CURRENCY UNSUPPORTED_CURRENCY", "AMOUNT INVALID_CHARACTER"), failures);
+    }
+
+
+    @Test
+    void reportsCurrencyReasonsWithoutRecording() {
+        assertEquals(Check.Reason.VALID, Check.currencyReason("XMR"));
+        assertEquals(Check.Reason.VALID, Check.currencyReason("USD"));
+        assertEquals(Check.Reason.UNSUPPORTED_CURRENCY, Check.currencyReason("usd"));
+        assertEquals(Check.Reason.NOT_A_STRING, Check.currencyReason(null));
+        assertEquals(List.of(), failures);
+    }
+
+
+    private static Check.Reason validate(Validator validator, String currency, String amount) {
+        return validator.validate("Label", WALLET, currency, amount, "", null, 0, 0, "");
+    }
+
+
+}